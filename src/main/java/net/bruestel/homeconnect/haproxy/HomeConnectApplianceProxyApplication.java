@@ -1,56 +1,118 @@
 package net.bruestel.homeconnect.haproxy;
 
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import lombok.extern.slf4j.Slf4j;
 
-import net.bruestel.homeconnect.haproxy.service.mdns.HomeApplianceListener;
+import net.bruestel.homeconnect.haproxy.service.capture.CaptureReader;
+import net.bruestel.homeconnect.haproxy.service.connect.HappyEyeballsConnector;
+import net.bruestel.homeconnect.haproxy.service.correlation.CorrelationEngine;
+import net.bruestel.homeconnect.haproxy.service.credential.CredentialStore;
+import net.bruestel.homeconnect.haproxy.service.credential.model.ApplianceProfile;
+import net.bruestel.homeconnect.haproxy.service.credential.model.CredentialSettings;
+import net.bruestel.homeconnect.haproxy.service.credential.model.ProfileImportResult;
+import net.bruestel.homeconnect.haproxy.service.mdns.DiscoveryCache;
+import net.bruestel.homeconnect.haproxy.service.description.DescriptionCache;
+import net.bruestel.homeconnect.haproxy.service.log.LogStore;
+import net.bruestel.homeconnect.haproxy.service.mdns.ApplianceRegistry;
 import net.bruestel.homeconnect.haproxy.service.mdns.MDNSService;
+import net.bruestel.homeconnect.haproxy.service.mdns.model.ApplianceRegistryUpdate;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.rule.RuleEngine;
+import net.bruestel.homeconnect.haproxy.service.state.ApplianceStateStore;
+import net.bruestel.homeconnect.haproxy.service.state.StateApiServer;
 import net.bruestel.homeconnect.haproxy.service.websocket.Const;
+import net.bruestel.homeconnect.haproxy.service.websocket.ProxyConfiguration;
+import net.bruestel.homeconnect.haproxy.service.websocket.ProxyService;
+import net.bruestel.homeconnect.haproxy.service.websocket.Transport;
 import net.bruestel.homeconnect.haproxy.service.websocket.WebSocketProxyServiceListener;
-import net.bruestel.homeconnect.haproxy.service.websocket.aes.AesProxyService;
-import net.bruestel.homeconnect.haproxy.service.websocket.tls.TlsProxyService;
+import net.bruestel.homeconnect.haproxy.service.websocket.aes.AesCrypto;
+import net.bruestel.homeconnect.haproxy.service.websocket.aes.AesTransport;
+import net.bruestel.homeconnect.haproxy.service.websocket.model.ProxySettings;
+import net.bruestel.homeconnect.haproxy.service.websocket.tls.TlsTransport;
+import net.bruestel.homeconnect.haproxy.ui.CaptureView;
 import net.bruestel.homeconnect.haproxy.ui.LogView;
 import net.bruestel.homeconnect.haproxy.ui.ProxyConfigurationView;
 import net.bruestel.homeconnect.haproxy.ui.TableView;
-import net.bruestel.homeconnect.haproxy.ui.model.LogEntry;
+import net.bruestel.homeconnect.haproxy.ui.model.HomeApplianceSecrets;
 import net.bruestel.homeconnect.haproxy.ui.model.Sender;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.ServerSocket;
 import java.net.URI;
-import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.stage.Stage;
 
 @Slf4j
-public class HomeConnectApplianceProxyApplication extends Application implements HomeApplianceListener {
+public class HomeConnectApplianceProxyApplication extends Application {
 
     private static final int STAGE_WIDTH = 1024;
     private static final int STAGE_HEIGHT = 600;
 
-    private final MDNSService mdnsService = new MDNSService(this);
-    private AesProxyService aesProxyService;
-    private TlsProxyService tlsProxyService;
+    private final DiscoveryCache discoveryCache = DiscoveryCache.load();
+    // merges the mDNS reports per appliance and publishes them in batches
+    private final ApplianceRegistry applianceRegistry = new ApplianceRegistry(this::onApplianceRegistryUpdate);
+    private final MDNSService mdnsService = new MDNSService(applianceRegistry);
+    private final CredentialStore credentialStore = new CredentialStore(CredentialSettings.fromSystemProperties());
+    private final Set<String> autoStartedIds = new HashSet<>();
+    private final DescriptionCache descriptionCache = DescriptionCache.load();
+    // remembers the best address of each appliance between proxy sessions
+    private final HappyEyeballsConnector happyEyeballsConnector = new HappyEyeballsConnector();
+    private ProxyService proxyService;
+    private volatile String proxiedApplianceId;
+    private volatile HomeApplianceSecrets proxiedSecrets;
+    // the log view of the running proxy receives its messages
+    private volatile WebSocketProxyServiceListener messageListener;
+    private final WebSocketProxyServiceListener proxyListener = new WebSocketProxyServiceListener() {
+        @Override
+        public void onAppMessage(Message message, String sessionId) {
+            messageListener.onAppMessage(message, sessionId);
+        }
+
+        @Override
+        public void onApplianceMessage(Message message, String sessionId) {
+            messageListener.onApplianceMessage(message, sessionId);
+        }
+    };
+    private final ApplianceStateStore stateStore = new ApplianceStateStore();
+    private StateApiServer stateApiServer;
 
+    private Stage stage;
+    private Scene mainScene;
     private TableView tableView;
 
     @Override
     public void start(Stage stage) throws Exception {
+        this.stage = stage;
+
+        tableView = new TableView();
+        tableView.setProfileAvailable(homeAppliance -> credentialStore.contains(homeAppliance.getId()));
+        tableView.setImportProfilesAction(files -> onProfilesImported(credentialStore.importProfiles(files.stream()
+                .map(File::toPath)
+                .toList())));
+        tableView.setOpenCaptureAction(this::openCapture);
+        showCachedHomeAppliances();
+
         // start mDNS listener
         mdnsService.startNetworkScan();
+        onProfilesImported(credentialStore.importProfilesDirectory());
 
-        tableView = new TableView();
-        Scene mainScene = new Scene(tableView, STAGE_WIDTH, STAGE_HEIGHT);
+        mainScene = new Scene(tableView, STAGE_WIDTH, STAGE_HEIGHT);
         stage.setScene(mainScene);
         stage.setTitle("Home Connect - Home Appliance Proxy");
         stage.show();
@@ -61,99 +123,11 @@ public class HomeConnectApplianceProxyApplication extends Application implements
 
             log.atInfo().log("Enter setup screen for {}", homeAppliance);
             var proxyConfigurationView = new ProxyConfigurationView(homeAppliance,
-                    homeApplianceSecrets -> {
-                        var logView = new LogView(stage,
-                                homeAppliance,
-                                onCancel -> {
-                                    stage.setScene(mainScene);
-                                    tableView.getHomeAppliances().clear();
-
-                                    new Thread(() -> {
-                                        mdnsService.unregisterAllProxyServices();
-                                        if (aesProxyService != null) {
-                                            aesProxyService.stop();
-                                            aesProxyService = null;
-                                        }
-                                        if (tlsProxyService != null) {
-                                            tlsProxyService.stop();
-                                            tlsProxyService = null;
-                                        }
-                                        mdnsService.startNetworkScan();
-                                    }).start();
-                                });
-                        Scene logViewScene = new Scene(logView, STAGE_WIDTH, STAGE_HEIGHT);
-                        stage.setScene(logViewScene);
-
-                        // message listener
-                        var messageListener = new WebSocketProxyServiceListener() {
-                            @Override
-                            public void onAppMessage(String message, String sessionId) {
-                                try {
-                                    logView.getLogEntries().add(new LogEntry(ZonedDateTime.now(),
-                                            sessionId,
-                                            Sender.APP,
-                                            new ObjectMapper().readValue(message, Object.class)));
-                                } catch (JsonProcessingException ex) {
-                                    log.atError().log("Error parsing app message: {}", message, ex);
-                                }
-                            }
-
-                            @Override
-                            public void onApplianceMessage(String message, String sessionId) {
-                                try {
-                                    logView.getLogEntries().add(new LogEntry(ZonedDateTime.now(),
-                                            sessionId,
-                                            Sender.HOME_APPLIANCE,
-                                            new ObjectMapper().readValue(message, Object.class)));
-                                } catch (JsonProcessingException ex) {
-                                    log.atError().log("Error parsing application message: {}", message, ex);
-                                }
-                            }
-                        };
-
-                        // start proxy service
-                        var proxyPort = getFreePort();
-                        Thread proxyThread = new Thread(() -> {
-                            if (aesProxyService != null) {
-                                aesProxyService.stop();
-                            }
-                            if (tlsProxyService != null) {
-                                tlsProxyService.stop();
-                            }
-
-                            if (ConnectionType.TLS.equals(homeAppliance.getConnectionType())) {
-                                tlsProxyService = new TlsProxyService(
-                                        getHomeApplianceWebsocketUri(homeAppliance, true),
-                                        homeApplianceSecrets.getPsk(),
-                                        messageListener,
-                                        proxyPort);
-                                try {
-                                    tlsProxyService.start();
-                                } catch (Exception ex) {
-                                    log.atError().log("Error starting TLS proxy service: {}", ex.getMessage(), ex);
-                                }
-                            } else {
-                                aesProxyService = new AesProxyService(
-                                        getHomeApplianceWebsocketUri(homeAppliance, false),
-                                        homeApplianceSecrets.getKey(),
-                                        homeApplianceSecrets.getIv(),
-                                        messageListener,
-                                        proxyPort);
-                                try {
-                                    aesProxyService.start();
-                                } catch (Exception ex) {
-                                    log.atError().log("Error starting AES proxy service: {}", ex.getMessage(), ex);
-                                }
-                            }
-                        });
-                        proxyThread.setDaemon(true);
-                        proxyThread.start();
-
-                        mdnsService.registerProxyService(homeAppliance, proxyPort);
-                    },
+                    credentialStore,
+                    homeApplianceSecrets -> startProxy(homeAppliance, homeApplianceSecrets),
                     onCancel -> {
                         stage.setScene(mainScene);
-                        tableView.getHomeAppliances().clear();
+                        showCachedHomeAppliances();
                         mdnsService.startNetworkScan();
                     });
             Scene newScene = new Scene(proxyConfigurationView, STAGE_WIDTH, STAGE_HEIGHT);
@@ -166,44 +140,264 @@ public class HomeConnectApplianceProxyApplication extends Application implements
                 log.atInfo().log("Stopping mDNS...");
                 mdnsService.stopNetworkScan();
                 mdnsService.close();
+                applianceRegistry.close();
 
-                if (aesProxyService != null) {
-                    aesProxyService.stop();
-                    aesProxyService = null;
+                if (proxyService != null) {
+                    proxyService.stop();
+                    proxyService = null;
                 }
 
-                if (tlsProxyService != null) {
-                    tlsProxyService.stop();
-                    tlsProxyService = null;
+                if (stateApiServer != null) {
+                    stateApiServer.stop();
+                    stateApiServer = null;
                 }
             }).start();
             Platform.exit();
         });
     }
 
-    @Override
-    public void onNewOrUpdatedHomeAppliance(HomeAppliance homeAppliance) {
-        Platform.runLater(() ->  {
-            var appliances = tableView.getHomeAppliances();
-            if (appliances.contains(homeAppliance)) {
-                appliances.stream()
-                        .filter(ha -> ha.equals(homeAppliance))
-                        .findFirst()
-                        .ifPresent(existingHomeAppliance -> {
-                                    existingHomeAppliance
-                                            .getAddressSet().addAll(homeAppliance.getAddressSet());
-                                    tableView.refresh();
-                                }
-                        );
-            } else {
-                appliances.add(homeAppliance);
+    private void startProxy(HomeAppliance homeAppliance, HomeApplianceSecrets homeApplianceSecrets) {
+        var correlationEngine = new CorrelationEngine();
+        var ruleEngine = RuleEngine.load();
+        var proxySettings = ProxySettings.fromSystemProperties();
+        var logView = new LogView(stage,
+                homeAppliance,
+                correlationEngine,
+                ruleEngine,
+                onCancel -> {
+                    stage.setScene(mainScene);
+                    showCachedHomeAppliances();
+
+                    // the only way to stop the proxy, a reconfiguration keeps it running
+                    proxiedApplianceId = null;
+                    proxiedSecrets = null;
+                    new Thread(() -> {
+                        mdnsService.unregisterAllProxyServices();
+                        if (proxyService != null) {
+                            proxyService.stop();
+                            proxyService = null;
+                        }
+                        mdnsService.startNetworkScan();
+                    }).start();
+                });
+        var logStore = logView.getLogStore();
+        logView.setProxyStatisticsSupplier(() -> getProxyStatistics(logStore));
+        Scene logViewScene = new Scene(logView, STAGE_WIDTH, STAGE_HEIGHT);
+        logView.setReconfigureAction(() -> showReconfiguration(homeAppliance, ruleEngine, logViewScene));
+        stage.setScene(logViewScene);
+
+        // message listener
+        messageListener = new WebSocketProxyServiceListener() {
+            @Override
+            public void onAppMessage(Message message, String sessionId) {
+                correlationEngine.onAppMessage(message, sessionId);
+                logStore.append(sessionId, Sender.APP, message, null);
+            }
+
+            @Override
+            public void onApplianceMessage(Message message, String sessionId) {
+                var correlation = correlationEngine.onApplianceMessage(message, sessionId);
+                stateStore.update(homeAppliance.getId(), message);
+                logStore.append(sessionId,
+                        Sender.HOME_APPLIANCE,
+                        message,
+                        correlation != null ? correlation.getResponseTimeMillis() : null);
+            }
+        };
+
+        // start proxy service
+        Thread proxyThread = new Thread(() -> {
+            startStateApiServer(proxySettings);
+            // uids are named once the device description is loaded
+            descriptionCache.get(homeAppliance.getId(), credentialStore.get(homeAppliance.getId())
+                            .map(ApplianceProfile::getSource)
+                            .orElse(null))
+                    .ifPresent(logStore::setFeatureTable);
+
+            var configuration = newProxyConfiguration(homeAppliance, homeApplianceSecrets, ruleEngine,
+                    proxySettings);
+            if (proxyService != null) {
+                proxyService.stop();
+            }
+            var proxyPort = getFreePort();
+            proxyService = new ProxyService(configuration, proxyListener, proxyPort);
+            proxiedApplianceId = homeAppliance.getId();
+            proxiedSecrets = homeApplianceSecrets;
+            try {
+                proxyService.start();
+                registerProxyService(homeAppliance, proxyPort);
+            } catch (Exception ex) {
+                proxiedApplianceId = null;
+                log.atError().log("Error starting proxy service: {}", ex.getMessage(), ex);
             }
         });
+        proxyThread.setDaemon(true);
+        proxyThread.start();
     }
 
-    @Override
-    public void onLostHomeAppliance(HomeAppliance homeAppliance) {
-        Platform.runLater(() -> tableView.getHomeAppliances().remove(homeAppliance));
+    private ProxyConfiguration newProxyConfiguration(HomeAppliance homeAppliance,
+                                                     HomeApplianceSecrets homeApplianceSecrets,
+                                                     RuleEngine ruleEngine,
+                                                     ProxySettings proxySettings) {
+        Transport transport = ConnectionType.TLS.equals(homeAppliance.getConnectionType())
+                ? new TlsTransport(getHomeApplianceWebsocketUri(homeAppliance, true),
+                        homeApplianceSecrets.getPsk())
+                : new AesTransport(getHomeApplianceWebsocketUri(homeAppliance, false),
+                        homeApplianceSecrets.getKey(),
+                        homeApplianceSecrets.getIv(),
+                        AesCrypto.of(proxySettings.getAesCryptoProvider()),
+                        proxySettings.getFrameCaptureDirectory());
+        return ProxyConfiguration.builder()
+                .transport(transport)
+                .applianceUriSelector(uri -> happyEyeballsConnector.select(homeAppliance.getId(),
+                        homeAppliance.getAddressSet(), uri))
+                .ruleEngine(ruleEngine)
+                .settings(proxySettings)
+                .build();
+    }
+
+    // the log view is left for the secrets form, the proxy keeps running meanwhile
+    private void showReconfiguration(HomeAppliance homeAppliance, RuleEngine ruleEngine, Scene logViewScene) {
+        log.atInfo().log("Enter reconfiguration screen for {}", homeAppliance);
+        var proxyConfigurationView = new ProxyConfigurationView(homeAppliance,
+                credentialStore,
+                proxiedSecrets,
+                "Apply",
+                homeApplianceSecrets -> {
+                    stage.setScene(logViewScene);
+                    reconfigureProxy(homeAppliance, homeApplianceSecrets, ruleEngine);
+                },
+                onCancel -> stage.setScene(logViewScene));
+        stage.setScene(new Scene(proxyConfigurationView, STAGE_WIDTH, STAGE_HEIGHT));
+    }
+
+    // the running proxy keeps its port, its app sessions and its mDNS record
+    private void reconfigureProxy(HomeAppliance homeAppliance, HomeApplianceSecrets homeApplianceSecrets,
+                                  RuleEngine ruleEngine) {
+        Thread reconfigureThread = new Thread(() -> {
+            var service = proxyService;
+            if (service == null || !homeAppliance.getId().equals(proxiedApplianceId)) {
+                log.atWarn().log("No proxy running for {}, nothing to reconfigure.", homeAppliance.getId());
+                return;
+            }
+            try {
+                service.reconfigure(newProxyConfiguration(homeAppliance, homeApplianceSecrets, ruleEngine,
+                        ProxySettings.fromSystemProperties()));
+                proxiedSecrets = homeApplianceSecrets;
+            } catch (Exception ex) {
+                log.atError().log("Error reconfiguring proxy service: {}", ex.getMessage(), ex);
+                showError("Proxy Error", "Could not reconfigure the proxy for " + homeAppliance.getId() + ".",
+                        "The proxy keeps its previous configuration: " + ex.getMessage());
+            }
+        });
+        reconfigureThread.setDaemon(true);
+        reconfigureThread.start();
+    }
+
+    // without the mDNS record the app does not find the proxy, so a failure is shown
+    private void registerProxyService(HomeAppliance homeAppliance, int proxyPort) {
+        mdnsService.registerProxyService(homeAppliance, proxyPort).exceptionally(e -> {
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            showError("mDNS Error", "Could not announce the proxy for " + homeAppliance.getId() + ".",
+                    "The app will not find the proxy: " + cause.getMessage());
+            return null;
+        });
+    }
+
+    private void showError(String title, String header, String content) {
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.initOwner(stage);
+            alert.setTitle(title);
+            alert.setHeaderText(header);
+            alert.setContentText(content);
+            alert.show();
+        });
+    }
+
+    private void onProfilesImported(CompletableFuture<ProfileImportResult> importResult) {
+        importResult.thenAccept(result -> Platform.runLater(() -> {
+            tableView.refresh();
+            autoStart(tableView.getHomeAppliances());
+        }));
+    }
+
+    // proxies the first discovered appliance with a profile that matches haproxy.autoStart, once per launch
+    private void autoStart(List<HomeAppliance> homeAppliances) {
+        if (stage.getScene() != mainScene) {
+            return;
+        }
+
+        homeAppliances.stream()
+                .filter(homeAppliance -> !homeAppliance.isCached())
+                .filter(homeAppliance -> credentialStore.getSettings().isAutoStart(homeAppliance.getId()))
+                .filter(homeAppliance -> !autoStartedIds.contains(homeAppliance.getId()))
+                .filter(homeAppliance -> credentialStore.get(homeAppliance.getId())
+                        .filter(profile -> profile.getConnectionType() == homeAppliance.getConnectionType())
+                        .isPresent())
+                .findFirst()
+                .ifPresent(homeAppliance -> {
+                    log.atInfo().log("Starting proxy for {} automatically.", homeAppliance);
+                    autoStartedIds.add(homeAppliance.getId());
+                    mdnsService.stopNetworkScan();
+                    startProxy(homeAppliance, credentialStore.get(homeAppliance.getId()).orElseThrow().toSecrets());
+                });
+    }
+
+    private void onApplianceRegistryUpdate(ApplianceRegistryUpdate update) {
+        update.getUpdated().stream()
+                .filter(homeAppliance -> !homeAppliance.isCached())
+                .forEach(discoveryCache::put);
+        update.getRemoved().forEach(discoveryCache::remove);
+        Platform.runLater(() -> {
+            tableView.apply(update);
+            autoStart(update.getUpdated());
+        });
+    }
+
+    // listed right away, mDNS revalidates them in the background
+    private void showCachedHomeAppliances() {
+        applianceRegistry.clear();
+        tableView.getHomeAppliances().setAll(discoveryCache.getHomeAppliances());
+        applianceRegistry.putAll(tableView.getHomeAppliances());
+    }
+
+    private Map<String, Long> getProxyStatistics(LogStore logStore) {
+        var service = proxyService;
+        var statistics = new LinkedHashMap<String, Long>(service != null ? service.getStatistics() : Map.of());
+        statistics.putAll(logStore.getStatistics());
+        return statistics;
+    }
+
+    private void openCapture(File file) {
+        CaptureReader captureReader;
+        try {
+            captureReader = CaptureReader.open(file.toPath());
+        } catch (IOException ex) {
+            log.atError().log("Error opening capture {}: {}", file, ex.getMessage(), ex);
+            return;
+        }
+
+        Stage captureStage = new Stage();
+        captureStage.initOwner(stage);
+        captureStage.setTitle("Capture: " + file.getName());
+        captureStage.setScene(new Scene(new CaptureView(captureReader), STAGE_WIDTH, STAGE_HEIGHT));
+        captureStage.setOnHidden(event -> captureReader.close());
+        captureStage.show();
+    }
+
+    private void startStateApiServer(ProxySettings proxySettings) {
+        if (stateApiServer != null || proxySettings.getStateApiPort() <= 0) {
+            return;
+        }
+
+        stateApiServer = new StateApiServer(stateStore, proxySettings.getStateApiPort());
+        try {
+            stateApiServer.start();
+        } catch (Exception ex) {
+            log.atError().log("Error starting state API: {}", ex.getMessage(), ex);
+            stateApiServer = null;
+        }
     }
 
     private int getFreePort() {
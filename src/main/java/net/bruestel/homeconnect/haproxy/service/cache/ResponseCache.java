@@ -0,0 +1,204 @@
+package net.bruestel.homeconnect.haproxy.service.cache;
+
+import lombok.Synchronized;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers GET requests for rarely changing resources (e.g. {@code /iz/info}, {@code /ci/services}) from earlier
+ * responses of the appliance. Entries are kept per resource, version and request data for the configured time to
+ * live and are dropped when the appliance notifies a change of the resource.
+ */
+@Slf4j
+public class ResponseCache {
+    private static final int MAX_ENTRIES = 256;
+    private static final long PENDING_TIMEOUT_NANOS = Duration.ofSeconds(30).toNanos();
+    // NOTIFY resources that change cached resources other than themselves
+    private static final Map<String, List<String>> INVALIDATIONS = Map.of(
+            "/ro/descriptionChange", List.of("/ro/allDescriptionChanges"),
+            "/ro/values", List.of("/ro/allMandatoryValues", "/ro/allValues"));
+
+    private final MessageRewriter messageRewriter;
+    private volatile Map<String, Long> ttlNanosByResource;
+
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>();
+    private final Map<RequestKey, PendingRequest> pendingRequests = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // incremented by every invalidation, responses to requests sent before are not stored
+    private long generation;
+
+    public ResponseCache(MessageRewriter messageRewriter, Map<String, Duration> ttls) {
+        this.messageRewriter = messageRewriter;
+        this.ttlNanosByResource = ttlNanos(ttls);
+    }
+
+    /**
+     * Replaces the time to live of the resources. All entries are dropped, responses to requests sent before are not
+     * stored.
+     */
+    @Synchronized
+    public void reconfigure(Map<String, Duration> ttls) {
+        ttlNanosByResource = ttlNanos(ttls);
+        entries.clear();
+        generation++;
+    }
+
+    public boolean isEnabled() {
+        return !ttlNanosByResource.isEmpty();
+    }
+
+    /**
+     * @return the cached response with the sID and msgID of the request, or {@code null} if there is none
+     */
+    @Synchronized
+    public Message lookup(Message request) {
+        if (!isCacheable(request)) {
+            return null;
+        }
+
+        var key = cacheKey(request);
+        var entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.getCreated() >= ttlNanosByResource.get(key.getResource())) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return messageRewriter.withHeader(entry.getResponse(), request.getSid(), request.getMsgId());
+    }
+
+    /**
+     * Remembers a request that is sent to the appliance, its response is stored by {@link #complete}.
+     */
+    @Synchronized
+    public void expect(String appSessionId, Message request) {
+        if (!isCacheable(request)) {
+            return;
+        }
+
+        var now = System.nanoTime();
+        pendingRequests.values().removeIf(pendingRequest -> now - pendingRequest.getSent() >= PENDING_TIMEOUT_NANOS);
+        pendingRequests.put(new RequestKey(appSessionId, request.getSid(), request.getMsgId()),
+                new PendingRequest(cacheKey(request), now, generation));
+    }
+
+    @Synchronized
+    public void complete(String appSessionId, Message response) {
+        if (!isEnabled() || response.getAction() != Action.RESPONSE) {
+            return;
+        }
+
+        var pendingRequest = pendingRequests.remove(
+                new RequestKey(appSessionId, response.getSid(), response.getMsgId()));
+        if (pendingRequest == null || response.hasCode() || pendingRequest.getGeneration() != generation) {
+            return;
+        }
+
+        entries.remove(pendingRequest.getCacheKey());
+        entries.put(pendingRequest.getCacheKey(), new Entry(response, System.nanoTime()));
+        if (entries.size() > MAX_ENTRIES) {
+            Iterator<CacheKey> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        log.atDebug().log("Cached response (resource={}).", response.getResource());
+    }
+
+    /**
+     * Drops the entries of the resources changed by a NOTIFY of the appliance.
+     */
+    @Synchronized
+    public void invalidate(Message message) {
+        if (!isEnabled() || message.getAction() != Action.NOTIFY || message.getResource() == null) {
+            return;
+        }
+
+        var resources = INVALIDATIONS.getOrDefault(message.getResource(), List.of());
+        if (entries.keySet().removeIf(key -> key.getResource().equals(message.getResource())
+                || resources.contains(key.getResource()))) {
+            log.atDebug().log("Invalidated cached responses (resource={}).", message.getResource());
+        }
+        if (ttlNanosByResource.containsKey(message.getResource())
+                || resources.stream().anyMatch(ttlNanosByResource::containsKey)) {
+            generation++;
+        }
+    }
+
+    @Synchronized
+    public void abandon(String appSessionId) {
+        pendingRequests.keySet().removeIf(key -> key.getAppSessionId().equals(appSessionId));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private boolean isCacheable(Message request) {
+        return request.getAction() == Action.GET
+                && request.getResource() != null
+                && ttlNanosByResource.containsKey(request.getResource());
+    }
+
+    private static Map<String, Long> ttlNanos(Map<String, Duration> ttls) {
+        var ttlNanos = new HashMap<String, Long>();
+        ttls.forEach((resource, ttl) -> {
+            if (!ttl.isZero() && !ttl.isNegative()) {
+                ttlNanos.put(resource, ttl.toNanos());
+            }
+        });
+        return ttlNanos;
+    }
+
+    private static CacheKey cacheKey(Message request) {
+        return new CacheKey(request.getResource(), request.getVersion(),
+                request.getData().isEmpty() ? "" : request.getData().toString());
+    }
+
+    @Value
+    private static class CacheKey {
+        String resource;
+        int version;
+        String data;
+    }
+
+    @Value
+    private static class RequestKey {
+        String appSessionId;
+        long sid;
+        long msgId;
+    }
+
+    @Value
+    private static class PendingRequest {
+        CacheKey cacheKey;
+        long sent;
+        long generation;
+    }
+
+    @Value
+    private static class Entry {
+        Message response;
+        long created;
+    }
+}
@@ -0,0 +1,103 @@
+package net.bruestel.homeconnect.haproxy.service.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Preset dictionaries for the deflate blocks of a capture. The protocol vocabulary (header keys, actions, common
+ * resources) is always part of it, a dictionary can additionally be trained on sample messages, e.g. the first
+ * messages of a session.
+ */
+public final class CaptureDictionary {
+    public static final int DEFAULT_SIZE = 16 * 1024;
+
+    private static final int MIN_SEGMENT_LENGTH = 4;
+    private static final int MIN_OCCURRENCES = 2;
+
+    // deflate matches the end of the dictionary with the shortest distances, so the most common strings go last
+    private static final List<String> VOCABULARY = List.of(
+            "\"resource\":\"/ci/services\"", "\"resource\":\"/ci/registeredDevices\"",
+            "\"resource\":\"/ci/tzInfo\"", "\"resource\":\"/iz/info\"", "\"resource\":\"/ni/info\"",
+            "\"resource\":\"/ei/deviceReady\"", "\"resource\":\"/ei/initialValues\"",
+            "\"resource\":\"/ro/descriptionChange\"", "\"resource\":\"/ro/allDescriptionChanges\"",
+            "\"resource\":\"/ro/allMandatoryValues\"", "\"resource\":\"/ro/activeProgram\"",
+            "\"resource\":\"/ro/selectedProgram\"", "\"resource\":\"/ro/values\"",
+            "\"action\":\"POST\"", "\"action\":\"GET\"", "\"action\":\"RESPONSE\"", "\"action\":\"NOTIFY\"",
+            "\"available\":true", "\"access\":\"read\"", "\"access\":\"readWrite\"", "\"code\":",
+            "\"edMsgID\":", "{\"sID\":", ",\"msgID\":", ",\"version\":1,", ",\"version\":2,",
+            ",\"data\":[{\"uid\":", "},{\"uid\":", ",\"value\":");
+
+    private CaptureDictionary() {
+    }
+
+    /**
+     * @return the protocol vocabulary only
+     */
+    public static byte[] vocabulary() {
+        var out = new ByteArrayOutputStream();
+        VOCABULARY.forEach(word -> out.writeBytes(word.getBytes(StandardCharsets.UTF_8)));
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds a dictionary of the vocabulary and the segments of the samples that save the most bytes: the payloads
+     * are split behind JSON delimiters, segments are ranked by occurrences times length.
+     *
+     * @param maxSize size limit of the dictionary, at most 32 KiB are used by deflate
+     */
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        var limit = Math.min(maxSize, CaptureFormat.MAX_DICTIONARY_SIZE);
+        var vocabulary = vocabulary();
+        var occurrences = new HashMap<String, Integer>();
+        for (byte[] sample : samples) {
+            var start = 0;
+            for (int i = 0; i < sample.length; i++) {
+                if (isDelimiter(sample[i]) || i == sample.length - 1) {
+                    if (i + 1 - start >= MIN_SEGMENT_LENGTH) {
+                        occurrences.merge(new String(sample, start, i + 1 - start, StandardCharsets.UTF_8), 1,
+                                Integer::sum);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+
+        var segments = new ArrayList<Map.Entry<String, Integer>>();
+        for (var entry : occurrences.entrySet()) {
+            if (entry.getValue() >= MIN_OCCURRENCES) {
+                segments.add(entry);
+            }
+        }
+        segments.sort(Comparator.comparingLong(CaptureDictionary::score).reversed());
+
+        var selected = new ArrayList<byte[]>();
+        var size = Math.min(vocabulary.length, limit);
+        for (var segment : segments) {
+            var bytes = segment.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length <= limit) {
+                selected.add(bytes);
+                size += bytes.length;
+            }
+        }
+
+        var out = new ByteArrayOutputStream(size);
+        out.write(vocabulary, 0, Math.min(vocabulary.length, limit));
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            out.writeBytes(selected.get(i));
+        }
+        return out.toByteArray();
+    }
+
+    private static long score(Map.Entry<String, Integer> segment) {
+        return (long) segment.getValue() * segment.getKey().length();
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '{' || b == '}' || b == '[' || b == ']';
+    }
+}
@@ -0,0 +1,34 @@
+package net.bruestel.homeconnect.haproxy.service.capture;
+
+/**
+ * Layout of a capture file. All numbers are big-endian.
+ * <pre>
+ * header:  magic HCCP, version (int), dictionary length (int), dictionary
+ * block:   magic HCCB, record count (int), raw length (int), compressed length (int), first timestamp (long),
+ *          records compressed with raw deflate and the preset dictionary
+ * record:  timestamp (long), sender (byte), response time (long), session, tag count (short), tags,
+ *          payload length (int), payload
+ * string:  UTF-8 length (unsigned short), UTF-8 bytes
+ * index:   magic HCCI, block count (int), per block: offset (long), first record (long)
+ * trailer: index offset (long), magic HCCE
+ * </pre>
+ * Every block is compressed on its own, a record is read by inflating its block only. Without the index (e.g. a
+ * capture that was not closed) the blocks can still be found by walking the block headers.
+ */
+final class CaptureFormat {
+    static final int MAGIC = 0x48434350; // HCCP
+    static final int FORMAT_VERSION = 1;
+    static final int BLOCK_MAGIC = 0x48434342; // HCCB
+    static final int INDEX_MAGIC = 0x48434349; // HCCI
+    static final int TRAILER_MAGIC = 0x48434345; // HCCE
+
+    static final int BLOCK_HEADER_SIZE = Integer.BYTES * 4 + Long.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+    // raw bytes per block, small enough that a random read inflates little
+    static final int BLOCK_SIZE = 32 * 1024;
+    // deflate looks back 32 KiB at most
+    static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private CaptureFormat() {
+    }
+}
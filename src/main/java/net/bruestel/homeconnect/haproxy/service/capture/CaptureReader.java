@@ -0,0 +1,378 @@
+package net.bruestel.homeconnect.haproxy.service.capture;
+
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.BLOCK_HEADER_SIZE;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.BLOCK_MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.FORMAT_VERSION;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.INDEX_MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.MAX_DICTIONARY_SIZE;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.TRAILER_MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.TRAILER_SIZE;
+
+/**
+ * Random access to the records of a capture file. The file is memory-mapped, nothing but the block index is read
+ * when it is opened. A read inflates the block of the record only, the last block is kept decoded for the
+ * neighbouring records.
+ * <p>
+ * The index is taken from the footer. A capture without one (e.g. it was not closed) is indexed in the background
+ * by walking the block headers, {@link #size()} grows while that runs. Thread-safe.
+ */
+@Slf4j
+public class CaptureReader implements Closeable {
+    // a mapping is limited to 2 GiB
+    private static final long SEGMENT_SIZE = 1L << 30;
+    // blocks found by the background scan before they are published
+    private static final int SCAN_PUBLISH_BLOCKS = 4096;
+    private static final Sender[] SENDERS = Sender.values();
+
+    private final Path file;
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+    private final byte[] dictionary;
+    private final Inflater inflater = new Inflater(true);
+
+    private volatile BlockIndex blockIndex;
+    private volatile boolean indexComplete;
+    private volatile boolean closed;
+    // called when the background scan has found more records and when it is done
+    @Setter
+    private volatile Runnable indexListener;
+
+    // decoded block
+    private int cachedBlock = -1;
+    private byte[] raw = new byte[0];
+    private int[] recordOffsets = new int[0];
+
+    private CaptureReader(Path file, MappedByteBuffer[] segments, long fileSize, byte[] dictionary) {
+        this.file = file;
+        this.segments = segments;
+        this.fileSize = fileSize;
+        this.dictionary = dictionary;
+    }
+
+    public static CaptureReader open(Path file) throws IOException {
+        MappedByteBuffer[] segments;
+        long fileSize;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                var position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, fileSize - position));
+            }
+        }
+
+        var header = slice(segments, fileSize, 0, Integer.BYTES * 3);
+        if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a capture of format version " + FORMAT_VERSION + ": " + file);
+        }
+        var dictionaryLength = header.getInt();
+        if (dictionaryLength < 0 || dictionaryLength > MAX_DICTIONARY_SIZE) {
+            throw new IOException("Invalid dictionary length " + dictionaryLength + ": " + file);
+        }
+        var dictionary = new byte[dictionaryLength];
+        slice(segments, fileSize, Integer.BYTES * 3, dictionaryLength).get(dictionary);
+
+        var reader = new CaptureReader(file, segments, fileSize, dictionary);
+        var firstBlock = Integer.BYTES * 3L + dictionaryLength;
+        var blockIndex = reader.readIndex(firstBlock);
+        if (blockIndex != null) {
+            reader.blockIndex = blockIndex;
+            reader.indexComplete = true;
+        } else {
+            log.atInfo().log("Capture {} has no index, scanning its blocks", file);
+            reader.blockIndex = new BlockIndex(new long[0], new long[0], 0, 0);
+            var thread = new Thread(() -> reader.scanBlocks(firstBlock), "capture-index");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return reader;
+    }
+
+    /**
+     * @return number of records, it grows while the index is built in the background
+     */
+    public long size() {
+        return blockIndex.records;
+    }
+
+    public boolean isIndexComplete() {
+        return indexComplete;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public synchronized CaptureRecord read(long index) throws IOException {
+        var snapshot = blockIndex;
+        if (closed) {
+            throw new IOException("Capture is closed: " + file);
+        }
+        if (index < 0 || index >= snapshot.records) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + snapshot.records);
+        }
+
+        var block = Arrays.binarySearch(snapshot.firstRecords, 0, snapshot.blocks, index);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (block != cachedBlock) {
+            decodeBlock(block, snapshot.offsets[block]);
+        }
+
+        // a malformed record must not escape as a runtime exception
+        try {
+            var buffer = ByteBuffer.wrap(raw);
+            buffer.position(recordOffsets[(int) (index - snapshot.firstRecords[block])]);
+            var builder = CaptureRecord.builder()
+                    .timestampNanos(buffer.getLong())
+                    .sender(SENDERS[buffer.get()])
+                    .responseTime(buffer.getLong())
+                    .sessionId(readString(buffer));
+            var tagCount = buffer.getShort() & 0xFFFF;
+            if (tagCount > 0) {
+                var tags = new ArrayList<String>(tagCount);
+                for (int i = 0; i < tagCount; i++) {
+                    tags.add(readString(buffer));
+                }
+                builder.tags(List.copyOf(tags));
+            }
+            var payload = new byte[buffer.getInt()];
+            buffer.get(payload);
+            return builder.payload(payload).build();
+        } catch (RuntimeException e) {
+            throw new IOException("Record " + index + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Stops the background scan. The mapping is released by the garbage collector.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            inflater.end();
+        }
+    }
+
+    private void decodeBlock(int block, long offset) throws IOException {
+        var header = slice(segments, fileSize, offset, BLOCK_HEADER_SIZE);
+        if (header.getInt() != BLOCK_MAGIC) {
+            throw new IOException("No block at offset " + offset);
+        }
+        var recordCount = header.getInt();
+        var rawLength = header.getInt();
+        var compressedLength = header.getInt();
+        if (recordCount < 0 || rawLength < 0) {
+            throw new IOException("Block at offset " + offset + " is corrupt");
+        }
+
+        // the buffers are overwritten now, they hold the block only once it is decoded completely
+        cachedBlock = -1;
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        inflater.reset();
+        // raw deflate has no dictionary id, the dictionary is set up front
+        if (dictionary.length > 0) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(slice(segments, fileSize, offset + BLOCK_HEADER_SIZE, compressedLength));
+        try {
+            var length = 0;
+            while (length < rawLength) {
+                var inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Block at offset " + offset + " is truncated");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block at offset " + offset + " is corrupt", e);
+        }
+
+        if (recordOffsets.length < recordCount) {
+            recordOffsets = new int[recordCount];
+        }
+        var buffer = ByteBuffer.wrap(raw, 0, rawLength);
+        try {
+            for (int i = 0; i < recordCount; i++) {
+                recordOffsets[i] = buffer.position();
+                buffer.position(buffer.position() + Long.BYTES + 1 + Long.BYTES);
+                skipString(buffer);
+                var tagCount = buffer.getShort() & 0xFFFF;
+                for (int t = 0; t < tagCount; t++) {
+                    skipString(buffer);
+                }
+                var payloadLength = buffer.getInt();
+                buffer.position(buffer.position() + payloadLength);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Block at offset " + offset + " is corrupt", e);
+        }
+        cachedBlock = block;
+    }
+
+    private BlockIndex readIndex(long firstBlock) throws IOException {
+        if (fileSize < firstBlock + TRAILER_SIZE) {
+            return null;
+        }
+        var trailer = slice(segments, fileSize, fileSize - TRAILER_SIZE, TRAILER_SIZE);
+        var indexOffset = trailer.getLong();
+        if (trailer.getInt() != TRAILER_MAGIC || indexOffset < firstBlock || indexOffset > fileSize - TRAILER_SIZE) {
+            return null;
+        }
+
+        var indexHeader = slice(segments, fileSize, indexOffset, Integer.BYTES * 2);
+        var blockCount = indexHeader.getInt() == INDEX_MAGIC ? indexHeader.getInt() : -1;
+        if (blockCount < 0 || indexOffset + Integer.BYTES * 2L + blockCount * 16L + TRAILER_SIZE != fileSize) {
+            return null;
+        }
+
+        var offsets = new long[blockCount];
+        var firstRecords = new long[blockCount];
+        var index = slice(segments, fileSize, indexOffset + Integer.BYTES * 2L, blockCount * 16);
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = index.getLong();
+            firstRecords[i] = index.getLong();
+        }
+        var records = 0L;
+        if (blockCount > 0) {
+            var lastHeader = slice(segments, fileSize, offsets[blockCount - 1], BLOCK_HEADER_SIZE);
+            lastHeader.getInt();
+            records = firstRecords[blockCount - 1] + lastHeader.getInt();
+        }
+        return new BlockIndex(offsets, firstRecords, blockCount, records);
+    }
+
+    // walks the block headers, a truncated last block is skipped
+    private void scanBlocks(long firstBlock) {
+        var offsets = new long[1024];
+        var firstRecords = new long[1024];
+        var blocks = 0;
+        var records = 0L;
+        var offset = firstBlock;
+        try {
+            while (!closed && offset + BLOCK_HEADER_SIZE <= fileSize) {
+                var header = slice(segments, fileSize, offset, BLOCK_HEADER_SIZE);
+                if (header.getInt() != BLOCK_MAGIC) {
+                    break;
+                }
+                var recordCount = header.getInt();
+                header.getInt();
+                var compressedLength = header.getInt();
+                if (offset + BLOCK_HEADER_SIZE + compressedLength > fileSize) {
+                    break;
+                }
+
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                    firstRecords = Arrays.copyOf(firstRecords, blocks * 2);
+                }
+                offsets[blocks] = offset;
+                firstRecords[blocks] = records;
+                blocks++;
+                records += recordCount;
+                offset += BLOCK_HEADER_SIZE + compressedLength;
+
+                // published arrays are never written again, the next ones are copies
+                if (blocks % SCAN_PUBLISH_BLOCKS == 0) {
+                    blockIndex = new BlockIndex(offsets, firstRecords, blocks, records);
+                    offsets = offsets.clone();
+                    firstRecords = firstRecords.clone();
+                    notifyIndexListener();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.atError().log("Error indexing capture {}: {}", file, e.getMessage());
+        }
+
+        blockIndex = new BlockIndex(offsets, firstRecords, blocks, records);
+        indexComplete = true;
+        log.atInfo().log("Indexed capture {}: {} blocks, {} records", file, blocks, records);
+        notifyIndexListener();
+    }
+
+    private void notifyIndexListener() {
+        var listener = indexListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return the bytes at the position, a view of the mapping unless they cross two segments
+     */
+    private static ByteBuffer slice(MappedByteBuffer[] segments, long fileSize, long position, int length)
+            throws IOException {
+        if (position < 0 || length < 0 || position + length > fileSize) {
+            throw new EOFException("Capture ends at " + fileSize + ", " + length + " bytes at " + position);
+        }
+
+        var segment = (int) (position / SEGMENT_SIZE);
+        var segmentOffset = (int) (position % SEGMENT_SIZE);
+        if (segmentOffset + (long) length <= segments[segment].capacity()) {
+            return segments[segment].slice(segmentOffset, length);
+        }
+
+        var copy = ByteBuffer.allocate(length);
+        while (copy.hasRemaining()) {
+            var part = Math.min(copy.remaining(), segments[segment].capacity() - segmentOffset);
+            copy.put(copy.position(), segments[segment], segmentOffset, part);
+            copy.position(copy.position() + part);
+            segment++;
+            segmentOffset = 0;
+        }
+        return copy.flip();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getShort() & 0xFFFF;
+        var value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        var length = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + length);
+    }
+
+    // block offsets and first records of the blocks found so far, never modified once published
+    @Value
+    private static class BlockIndex {
+        long[] offsets;
+        long[] firstRecords;
+        int blocks;
+        long records;
+    }
+}
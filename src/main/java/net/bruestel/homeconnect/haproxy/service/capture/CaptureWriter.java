@@ -0,0 +1,188 @@
+package net.bruestel.homeconnect.haproxy.service.capture;
+
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.BLOCK_MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.BLOCK_SIZE;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.FORMAT_VERSION;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.INDEX_MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.MAGIC;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.MAX_DICTIONARY_SIZE;
+import static net.bruestel.homeconnect.haproxy.service.capture.CaptureFormat.TRAILER_MAGIC;
+
+/**
+ * Writes a capture file (see {@link CaptureFormat}): records are collected into blocks of about 32 KiB, each block
+ * is deflated on its own with the preset dictionary. The block index is written on {@link #close()}. Not
+ * thread-safe.
+ */
+public class CaptureWriter implements Closeable {
+    private final DataOutputStream out;
+    private final byte[] dictionary;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    // a record is encoded here first, one that cannot be written leaves nothing in the block
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private int blockRecords;
+    private long blockTimestamp;
+
+    private long position;
+    private long records;
+    private long[] blockOffsets = new long[64];
+    private long[] blockFirstRecords = new long[64];
+    private int blocks;
+    private boolean closed;
+
+    private CaptureWriter(DataOutputStream out, byte[] dictionary) {
+        this.out = out;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param dictionary preset dictionary of the deflate blocks, e.g. {@link CaptureDictionary#train}
+     */
+    public static CaptureWriter create(Path file, byte[] dictionary) throws IOException {
+        if (dictionary.length > MAX_DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+        }
+        var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        var writer = new CaptureWriter(out, dictionary);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dictionary.length);
+            out.write(dictionary);
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+        writer.position = Integer.BYTES * 3L + dictionary.length;
+        return writer;
+    }
+
+    /**
+     * @throws IOException if a string of the record is too long, the record is not written then
+     */
+    public void write(CaptureRecord captureRecord) throws IOException {
+        record.reset();
+        recordOut.writeLong(captureRecord.getTimestampNanos());
+        recordOut.writeByte(captureRecord.getSender().ordinal());
+        recordOut.writeLong(captureRecord.getResponseTime());
+        writeString(captureRecord.getSessionId());
+        if (captureRecord.getTags().size() > 0xFFFF) {
+            throw new IOException("Too many tags for a capture: " + captureRecord.getTags().size());
+        }
+        recordOut.writeShort(captureRecord.getTags().size());
+        for (String tag : captureRecord.getTags()) {
+            writeString(tag);
+        }
+        recordOut.writeInt(captureRecord.getPayload().length);
+        recordOut.write(captureRecord.getPayload());
+
+        if (blockRecords == 0) {
+            blockTimestamp = captureRecord.getTimestampNanos();
+        }
+        record.writeTo(block);
+        blockRecords++;
+        records++;
+
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return bytes written to the file so far, the pending block is not included
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try (out) {
+            flushBlock();
+            var indexOffset = position;
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(blockOffsets[i]);
+                out.writeLong(blockFirstRecords[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(TRAILER_MAGIC);
+            position += Integer.BYTES * 2L + (long) blocks * Long.BYTES * 2 + Long.BYTES + Integer.BYTES;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for a capture: " + bytes.length + " bytes");
+        }
+        recordOut.writeShort(bytes.length);
+        recordOut.write(bytes);
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRecords == 0) {
+            return;
+        }
+
+        var raw = block.toByteArray();
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(raw);
+        deflater.finish();
+        var length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (blocks == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+            blockFirstRecords = Arrays.copyOf(blockFirstRecords, blocks * 2);
+        }
+        blockOffsets[blocks] = position;
+        blockFirstRecords[blocks] = records - blockRecords;
+        blocks++;
+
+        out.writeInt(BLOCK_MAGIC);
+        out.writeInt(blockRecords);
+        out.writeInt(raw.length);
+        out.writeInt(length);
+        out.writeLong(blockTimestamp);
+        out.write(compressed, 0, length);
+        position += CaptureFormat.BLOCK_HEADER_SIZE + length;
+
+        block.reset();
+        blockRecords = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package net.bruestel.homeconnect.haproxy.service.capture.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.util.List;
+
+/**
+ * Message of a capture file: the decrypted payload with the metadata of the log entry.
+ */
+@Value
+@Builder
+public class CaptureRecord {
+    public static final long NO_RESPONSE_TIME = -1;
+
+    // epoch nanos
+    long timestampNanos;
+    String sessionId;
+    Sender sender;
+    // milliseconds or NO_RESPONSE_TIME
+    @Builder.Default
+    long responseTime = NO_RESPONSE_TIME;
+    @Builder.Default
+    List<String> tags = List.of();
+    byte[] payload;
+}
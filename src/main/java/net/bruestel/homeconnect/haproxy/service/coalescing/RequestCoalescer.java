@@ -0,0 +1,239 @@
+package net.bruestel.homeconnect.haproxy.service.coalescing;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Single-flight for GET requests: an identical request (resource, version, data) that arrives within the
+ * coalescing window while another one is in flight is not sent to the appliance. It is answered from the
+ * response of the first request (the leader), with its own sID and msgID. If the leader is not answered, because
+ * its app session was closed, a rule dropped the response or it timed out, the first follower sends its request to
+ * the appliance and leads the flight from then on.
+ */
+@Slf4j
+public class RequestCoalescer {
+    private static final long FLIGHT_TIMEOUT_NANOS = Duration.ofSeconds(30).toNanos();
+
+    private final MessageRewriter messageRewriter;
+    private volatile long windowNanos;
+
+    private final Object lock = new Object();
+    private final Map<FlightKey, Flight> flights = new HashMap<>();
+    private final Map<LeaderKey, Flight> flightsByLeader = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RequestCoalescer(MessageRewriter messageRewriter, Duration window) {
+        this.messageRewriter = messageRewriter;
+        this.windowNanos = window.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * Changes the coalescing window, flights in progress are still completed.
+     */
+    public void reconfigure(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * @param reply   called with the response of the leader
+     * @param forward sends the request to the appliance, if the request has to lead the flight later on
+     * @return {@code true} if the request joined a flight and must not be forwarded now
+     */
+    public boolean join(String appSessionId, Message request, Consumer<Message> reply, Runnable forward) {
+        if (!isEnabled() || request.getAction() != Action.GET || request.getResource() == null) {
+            return false;
+        }
+
+        var now = System.nanoTime();
+        List<Follower> promoted;
+        boolean joined;
+        synchronized (lock) {
+            promoted = promote(flight -> now - flight.getStarted() >= FLIGHT_TIMEOUT_NANOS, now);
+
+            var flightKey = new FlightKey(request.getResource(), request.getVersion(),
+                    request.getData().isEmpty() ? "" : request.getData().toString());
+            var flight = flights.get(flightKey);
+            joined = flight != null && now - flight.getStarted() < windowNanos;
+            if (joined) {
+                flight.getFollowers().add(new Follower(appSessionId, request.getSid(), request.getMsgId(), reply,
+                        forward));
+                hits.increment();
+            } else {
+                var leaderKey = new LeaderKey(appSessionId, request.getSid(), request.getMsgId());
+                flight = new Flight(flightKey, leaderKey, now, new ArrayList<>());
+                flights.put(flightKey, flight);
+                flightsByLeader.put(leaderKey, flight);
+                misses.increment();
+            }
+        }
+        forward(promoted);
+        return joined;
+    }
+
+    /**
+     * Completes the flight led by the request the response belongs to and answers all followers.
+     */
+    public void complete(String appSessionId, Message response) {
+        if (!isEnabled() || response.getAction() != Action.RESPONSE) {
+            return;
+        }
+
+        Flight flight;
+        synchronized (lock) {
+            flight = flightsByLeader.remove(new LeaderKey(appSessionId, response.getSid(), response.getMsgId()));
+            if (flight == null) {
+                return;
+            }
+            flights.remove(flight.getFlightKey(), flight);
+        }
+
+        for (Follower follower : flight.getFollowers()) {
+            try {
+                follower.getReply().accept(messageRewriter.withHeader(response, follower.getSid(), follower.getMsgId()));
+            } catch (RuntimeException e) {
+                log.atError().log("Error answering coalesced request (resource={})", response.getResource(), e);
+            }
+        }
+    }
+
+    /**
+     * Hands the flight led by the request the dropped response belongs to over to its first follower.
+     */
+    public void drop(String appSessionId, Message response) {
+        if (!isEnabled() || response.getAction() != Action.RESPONSE) {
+            return;
+        }
+
+        var leaderKey = new LeaderKey(appSessionId, response.getSid(), response.getMsgId());
+        List<Follower> promoted;
+        synchronized (lock) {
+            promoted = promote(flight -> flight.getLeaderKey().equals(leaderKey), System.nanoTime());
+        }
+        forward(promoted);
+    }
+
+    /**
+     * Forgets the requests of a closed app session. The flights it led are handed over to their first follower.
+     */
+    public void abandon(String appSessionId) {
+        List<Follower> promoted;
+        synchronized (lock) {
+            for (Flight flight : flightsByLeader.values()) {
+                flight.getFollowers().removeIf(follower -> follower.getAppSessionId().equals(appSessionId));
+            }
+            promoted = promote(flight -> flight.getLeaderKey().getAppSessionId().equals(appSessionId),
+                    System.nanoTime());
+        }
+        forward(promoted);
+    }
+
+    /**
+     * Hands the flights whose leader was not answered in time over to their first follower.
+     */
+    public void expire() {
+        var now = System.nanoTime();
+        List<Follower> promoted;
+        synchronized (lock) {
+            promoted = promote(flight -> now - flight.getStarted() >= FLIGHT_TIMEOUT_NANOS, now);
+        }
+        forward(promoted);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // called with the lock held, removes the matching flights and returns the followers that lead them from now on
+    private List<Follower> promote(Predicate<Flight> ended, long now) {
+        List<Follower> promoted = new ArrayList<>();
+        List<Flight> successors = new ArrayList<>();
+        var iterator = flightsByLeader.values().iterator();
+        while (iterator.hasNext()) {
+            var flight = iterator.next();
+            if (!ended.test(flight)) {
+                continue;
+            }
+            iterator.remove();
+            flights.remove(flight.getFlightKey(), flight);
+
+            var followers = flight.getFollowers();
+            if (!followers.isEmpty()) {
+                var leader = followers.get(0);
+                successors.add(new Flight(flight.getFlightKey(),
+                        new LeaderKey(leader.getAppSessionId(), leader.getSid(), leader.getMsgId()),
+                        now, new ArrayList<>(followers.subList(1, followers.size()))));
+                promoted.add(leader);
+            }
+        }
+
+        for (Flight successor : successors) {
+            flightsByLeader.put(successor.getLeaderKey(), successor);
+            flights.putIfAbsent(successor.getFlightKey(), successor);
+        }
+        return promoted;
+    }
+
+    private void forward(List<Follower> promoted) {
+        for (Follower follower : promoted) {
+            log.atDebug().log("Coalesced request leads its flight now (appSessionId={}).", follower.getAppSessionId());
+            try {
+                follower.getForward().run();
+            } catch (RuntimeException e) {
+                log.atError().log("Error forwarding coalesced request", e);
+            }
+        }
+    }
+
+    @Value
+    private static class FlightKey {
+        String resource;
+        int version;
+        String data;
+    }
+
+    @Value
+    private static class LeaderKey {
+        String appSessionId;
+        long sid;
+        long msgId;
+    }
+
+    @Value
+    private static class Flight {
+        FlightKey flightKey;
+        LeaderKey leaderKey;
+        long started;
+        List<Follower> followers;
+    }
+
+    @Value
+    private static class Follower {
+        String appSessionId;
+        long sid;
+        long msgId;
+        Consumer<Message> reply;
+        Runnable forward;
+    }
+}
@@ -0,0 +1,227 @@
+package net.bruestel.homeconnect.haproxy.service.connect;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Races TCP connections to all known addresses of an appliance ("Happy Eyeballs", RFC 8305). The attempts start
+ * staggered, the next one earlier if an attempt fails, and the first address that accepts a connection wins. The
+ * winning address and the connect times are remembered per appliance and decide the order of the next race.
+ */
+@Slf4j
+public class HappyEyeballsConnector {
+    private static final Duration ATTEMPT_DELAY = Duration.ofMillis(250);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "happy-eyeballs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, AddressHistory> histories = new ConcurrentHashMap<>();
+
+    /**
+     * @return the WebSocket URI with the host replaced by the address that won the race, the given URI if no
+     * address accepted a connection
+     */
+    public URI select(String applianceId, Collection<InetAddress> addresses, URI websocketUri) {
+        var candidates = new ArrayList<>(addresses);
+        if (candidates.size() <= 1) {
+            return websocketUri;
+        }
+
+        var history = histories.computeIfAbsent(applianceId, id -> new AddressHistory());
+        var port = websocketUri.getPort() > 0
+                ? websocketUri.getPort()
+                : "wss".equals(websocketUri.getScheme()) ? HTTPS_PORT : HTTP_PORT;
+        var started = System.nanoTime();
+        var winner = race(history.order(candidates), port, history);
+        if (winner == null) {
+            log.atWarn().log("No address of appliance {} accepted a connection. Trying {}.", applianceId, websocketUri);
+            return websocketUri;
+        }
+
+        log.atInfo()
+                .addArgument(winner.getHostAddress())
+                .addArgument(candidates.size())
+                .addArgument(() -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started))
+                .log("Address {} won the race of {} appliance addresses ({} ms).");
+        history.setPreferred(winner);
+        return withHost(websocketUri, winner);
+    }
+
+    private InetAddress race(List<InetAddress> candidates, int port, AddressHistory history) {
+        var completionService = new ExecutorCompletionService<InetAddress>(executor);
+        var sockets = ConcurrentHashMap.<Socket>newKeySet();
+        var decided = new AtomicBoolean();
+        var attempts = new ArrayList<Future<InetAddress>>();
+        var started = 0;
+        var finished = 0;
+
+        try {
+            attempts.add(completionService.submit(attempt(candidates.get(started++), port, history, sockets, decided)));
+            while (finished < candidates.size()) {
+                var timeout = started < candidates.size() ? ATTEMPT_DELAY : CONNECT_TIMEOUT;
+                var attempt = completionService.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                if (attempt == null) {
+                    if (started == candidates.size()) {
+                        return null;
+                    }
+                } else {
+                    finished++;
+                    var address = attempt.get();
+                    if (address != null) {
+                        return address;
+                    }
+                }
+
+                // after the delay or a failed attempt
+                if (started < candidates.size()) {
+                    attempts.add(completionService.submit(
+                            attempt(candidates.get(started++), port, history, sockets, decided)));
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.atError().log("Error racing appliance addresses", e);
+            return null;
+        } finally {
+            // the losers are not needed anymore
+            decided.set(true);
+            attempts.forEach(attempt -> attempt.cancel(false));
+            sockets.forEach(HappyEyeballsConnector::closeQuietly);
+        }
+    }
+
+    private static Callable<InetAddress> attempt(InetAddress address, int port, AddressHistory history,
+                                                 Set<Socket> sockets, AtomicBoolean decided) {
+        return () -> {
+            var socket = new Socket();
+            sockets.add(socket);
+            // an attempt that starts after the race was decided is not closed by the winner
+            if (decided.get()) {
+                sockets.remove(socket);
+                return null;
+            }
+            var started = System.nanoTime();
+            try (socket) {
+                socket.connect(new InetSocketAddress(address, port), (int) CONNECT_TIMEOUT.toMillis());
+                history.reachable(address, System.nanoTime() - started);
+                return address;
+            } catch (IOException e) {
+                // a loser closed by the winner is not unreachable
+                if (!decided.get()) {
+                    log.atDebug().log("Address {} is not reachable: {}", address.getHostAddress(), e.getMessage());
+                    history.unreachable(address);
+                }
+                return null;
+            } finally {
+                sockets.remove(socket);
+            }
+        };
+    }
+
+    private static URI withHost(URI uri, InetAddress address) {
+        try {
+            return new URI(uri.getScheme(), uri.getUserInfo(), address.getHostAddress(), uri.getPort(),
+                    uri.getPath(), uri.getQuery(), uri.getFragment());
+        } catch (URISyntaxException e) {
+            log.atWarn().log("Address {} cannot be used in a URI: {}", address.getHostAddress(), e.getMessage());
+            return uri;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing a loser
+        }
+    }
+
+    private static class AddressHistory {
+        private final Map<InetAddress, Long> connectNanos = new ConcurrentHashMap<>();
+        private final Set<InetAddress> unreachableAddresses = ConcurrentHashMap.newKeySet();
+        private volatile InetAddress preferred;
+
+        synchronized void setPreferred(InetAddress address) {
+            preferred = address;
+        }
+
+        void reachable(InetAddress address, long nanos) {
+            connectNanos.put(address, nanos);
+            unreachableAddresses.remove(address);
+        }
+
+        synchronized void unreachable(InetAddress address) {
+            connectNanos.remove(address);
+            unreachableAddresses.add(address);
+            if (address.equals(preferred)) {
+                preferred = null;
+            }
+        }
+
+        /**
+         * Preferred address first, then by connect time, unreachable addresses last. IPv4 before IPv6 for unknown
+         * addresses, the families alternate after the first attempt.
+         */
+        List<InetAddress> order(List<InetAddress> addresses) {
+            var sorted = new ArrayList<>(addresses);
+            sorted.sort(Comparator.<InetAddress, Boolean>comparing(address -> !address.equals(preferred))
+                    .thenComparing(unreachableAddresses::contains)
+                    .thenComparing(address -> connectNanos.getOrDefault(address, Long.MAX_VALUE))
+                    .thenComparing(address -> !(address instanceof Inet4Address)));
+
+            var ipv4 = new ArrayDeque<InetAddress>();
+            var ipv6 = new ArrayDeque<InetAddress>();
+            var unreachable = new ArrayList<InetAddress>();
+            for (InetAddress address : sorted.subList(1, sorted.size())) {
+                if (unreachableAddresses.contains(address)) {
+                    unreachable.add(address);
+                } else {
+                    (address instanceof Inet4Address ? ipv4 : ipv6).add(address);
+                }
+            }
+
+            var ordered = new ArrayList<InetAddress>(sorted.size());
+            ordered.add(sorted.get(0));
+            var nextIpv4 = !(sorted.get(0) instanceof Inet4Address);
+            while (!ipv4.isEmpty() || !ipv6.isEmpty()) {
+                var family = nextIpv4 && !ipv4.isEmpty() || ipv6.isEmpty() ? ipv4 : ipv6;
+                ordered.add(family.poll());
+                nextIpv4 = family == ipv6;
+            }
+            ordered.addAll(unreachable);
+            return ordered;
+        }
+    }
+}
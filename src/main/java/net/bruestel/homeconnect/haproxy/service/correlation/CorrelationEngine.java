@@ -0,0 +1,165 @@
+package net.bruestel.homeconnect.haproxy.service.correlation;
+
+import lombok.Synchronized;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.correlation.model.Correlation;
+import net.bruestel.homeconnect.haproxy.service.correlation.model.ResourceStatistics;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pairs app requests with the appliance responses (sID + msgID) and attributes NOTIFY messages that follow a
+ * POST on the same resource. Pending requests live in a bounded, insertion ordered table; entries older than the
+ * timeout are expired while messages pass through.
+ */
+@Slf4j
+public class CorrelationEngine {
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_FOLLOW_UP_WINDOW = Duration.ofSeconds(2);
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 1024;
+
+    private final long timeoutNanos;
+    private final long followUpWindowNanos;
+    private final int maxPendingRequests;
+
+    private final LinkedHashMap<RequestKey, PendingRequest> pendingRequests = new LinkedHashMap<>();
+    private final LinkedHashMap<ResourceKey, PendingRequest> followUps = new LinkedHashMap<>();
+    private final Map<String, ResourceStatistics> statistics = new ConcurrentHashMap<>();
+
+    public CorrelationEngine() {
+        this(DEFAULT_TIMEOUT, DEFAULT_FOLLOW_UP_WINDOW, DEFAULT_MAX_PENDING_REQUESTS);
+    }
+
+    public CorrelationEngine(Duration timeout, Duration followUpWindow, int maxPendingRequests) {
+        this.timeoutNanos = timeout.toNanos();
+        this.followUpWindowNanos = followUpWindow.toNanos();
+        this.maxPendingRequests = maxPendingRequests;
+    }
+
+    @Synchronized
+    public void onAppMessage(Message message, String sessionId) {
+        var now = System.nanoTime();
+        expire(now);
+
+        if (!message.isRequest()) {
+            return;
+        }
+
+        if (pendingRequests.size() >= maxPendingRequests) {
+            var eldest = pendingRequests.entrySet().iterator().next();
+            pendingRequests.remove(eldest.getKey());
+            timedOut(eldest.getValue());
+        }
+        pendingRequests.put(new RequestKey(sessionId, message.getSid(), message.getMsgId()),
+                new PendingRequest(message, sessionId, now));
+    }
+
+    /**
+     * @return the correlation of a response or NOTIFY follow-up, {@code null} if the message is unrelated
+     */
+    @Synchronized
+    public Correlation onApplianceMessage(Message message, String sessionId) {
+        var now = System.nanoTime();
+        expire(now);
+
+        if (message.getAction() == Action.RESPONSE) {
+            var pendingRequest = pendingRequests.remove(
+                    new RequestKey(sessionId, message.getSid(), message.getMsgId()));
+            if (pendingRequest == null) {
+                return null;
+            }
+
+            var request = pendingRequest.getRequest();
+            var responseTime = now - pendingRequest.getTimestamp();
+            var resourceStatistics = getStatistics(request.getResource());
+            resourceStatistics.getHistogram().record(responseTime);
+            if (message.hasCode()) {
+                resourceStatistics.getErrors().increment();
+            }
+
+            if (request.getAction() == Action.POST && request.getResource() != null) {
+                var resourceKey = new ResourceKey(sessionId, request.getResource());
+                followUps.remove(resourceKey);
+                followUps.put(resourceKey, new PendingRequest(request, sessionId, now));
+            }
+            return new Correlation(request, message, responseTime, false);
+        }
+
+        if (message.getAction() == Action.NOTIFY && message.getResource() != null) {
+            var followUp = followUps.get(new ResourceKey(sessionId, message.getResource()));
+            if (followUp != null) {
+                return new Correlation(followUp.getRequest(), message, now - followUp.getTimestamp(), true);
+            }
+        }
+        return null;
+    }
+
+    public Collection<ResourceStatistics> getStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+
+    @Synchronized
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    private ResourceStatistics getStatistics(String resource) {
+        return statistics.computeIfAbsent(resource == null ? "" : resource, ResourceStatistics::new);
+    }
+
+    private void expire(long now) {
+        var iterator = pendingRequests.values().iterator();
+        while (iterator.hasNext()) {
+            var pendingRequest = iterator.next();
+            if (now - pendingRequest.getTimestamp() < timeoutNanos) {
+                break;
+            }
+            iterator.remove();
+            timedOut(pendingRequest);
+        }
+
+        var followUpIterator = followUps.values().iterator();
+        while (followUpIterator.hasNext()) {
+            if (now - followUpIterator.next().getTimestamp() < followUpWindowNanos) {
+                break;
+            }
+            followUpIterator.remove();
+        }
+    }
+
+    private void timedOut(PendingRequest pendingRequest) {
+        var request = pendingRequest.getRequest();
+        log.atInfo().log("No response from home appliance (resource={}, sID={}, msgID={}, sessionId={}).",
+                request.getResource(), request.getSid(), request.getMsgId(), pendingRequest.getSessionId());
+        getStatistics(request.getResource()).getTimeouts().increment();
+    }
+
+    @Value
+    private static class RequestKey {
+        String sessionId;
+        long sid;
+        long msgId;
+    }
+
+    @Value
+    private static class ResourceKey {
+        String sessionId;
+        String resource;
+    }
+
+    @Value
+    private static class PendingRequest {
+        Message request;
+        String sessionId;
+        long timestamp;
+    }
+}
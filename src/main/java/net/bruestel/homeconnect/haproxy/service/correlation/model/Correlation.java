@@ -0,0 +1,19 @@
+package net.bruestel.homeconnect.haproxy.service.correlation.model;
+
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.util.concurrent.TimeUnit;
+
+@Value
+public class Correlation {
+    Message request;
+    Message response;
+    long responseTimeNanos;
+    boolean followUp;
+
+    public long getResponseTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(responseTimeNanos);
+    }
+}
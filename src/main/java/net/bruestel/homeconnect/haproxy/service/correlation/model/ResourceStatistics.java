@@ -0,0 +1,25 @@
+package net.bruestel.homeconnect.haproxy.service.correlation.model;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+@Getter
+public class ResourceStatistics {
+    private final String resource;
+    private final ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public ResourceStatistics(String resource) {
+        this.resource = resource;
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,64 @@
+package net.bruestel.homeconnect.haproxy.service.correlation.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free response time histogram with fixed, roughly logarithmic buckets (upper bounds in milliseconds).
+ */
+public class ResponseTimeHistogram {
+
+    private static final long[] BUCKET_UPPER_BOUNDS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 30_000, Long.MAX_VALUE
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.length);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        var millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        var bucket = 0;
+        while (millis > BUCKET_UPPER_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMillis() {
+        var n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(sumNanos.get() / n);
+    }
+
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    /**
+     * Upper bound of the bucket that contains the given percentile (0..100), capped by the observed maximum.
+     */
+    public long getPercentileMillis(double percentile) {
+        var n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        var rank = (long) Math.ceil(n * percentile / 100.0);
+        var seen = 0L;
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS_MILLIS[i], getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,173 @@
+package net.bruestel.homeconnect.haproxy.service.credential;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.credential.model.ApplianceProfile;
+import net.bruestel.homeconnect.haproxy.service.credential.model.CredentialSettings;
+import net.bruestel.homeconnect.haproxy.service.credential.model.ProfileImportResult;
+import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Secrets of the appliances, indexed by appliance id. Profile files of the "Home Connect Profile Downloader" are
+ * imported in parallel off the FX thread, the secrets are kept in memory only.
+ */
+@Slf4j
+public class CredentialStore {
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String JSON_EXTENSION = ".json";
+    private static final int AES_KEY_LENGTH = 32;
+    private static final int AES_IV_LENGTH = 16;
+    private static final int PSK_LENGTH = 32;
+
+    @Getter
+    private final CredentialSettings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, ApplianceProfile> profiles = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                var thread = new Thread(runnable, "profile-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public CredentialStore(CredentialSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Imports all profile files of the profiles directory.
+     */
+    public CompletableFuture<ProfileImportResult> importProfilesDirectory() {
+        var directory = settings.getProfilesDirectory();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return CompletableFuture.completedFuture(new ProfileImportResult(List.of(), List.of()));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return importProfiles(files
+                    .filter(file -> StringUtils.endsWithIgnoreCase(file.getFileName().toString(), ZIP_EXTENSION))
+                    .toList());
+        } catch (IOException e) {
+            log.atError().log("Error listing profiles directory {}: {}", directory.toAbsolutePath(), e.getMessage());
+            return CompletableFuture.completedFuture(new ProfileImportResult(List.of(), List.of(directory)));
+        }
+    }
+
+    /**
+     * Reads the profile files in parallel. A later profile of an appliance replaces the earlier one.
+     */
+    public CompletableFuture<ProfileImportResult> importProfiles(Collection<Path> files) {
+        var reads = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> readProfiles(file), executor))
+                .toList();
+        return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    var imported = new ArrayList<ApplianceProfile>();
+                    var failed = new ArrayList<Path>();
+                    var iterator = files.iterator();
+                    for (CompletableFuture<List<ApplianceProfile>> read : reads) {
+                        var file = iterator.next();
+                        var fileProfiles = read.join();
+                        if (fileProfiles.isEmpty()) {
+                            failed.add(file);
+                        }
+                        fileProfiles.forEach(profile -> profiles.put(profile.getApplianceId(), profile));
+                        imported.addAll(fileProfiles);
+                    }
+                    log.atInfo().log("Imported {} appliance profile(s), {} file(s) failed.",
+                            imported.size(), failed.size());
+                    return new ProfileImportResult(imported, failed);
+                });
+    }
+
+    public Optional<ApplianceProfile> get(String applianceId) {
+        return applianceId != null ? Optional.ofNullable(profiles.get(applianceId)) : Optional.empty();
+    }
+
+    public boolean contains(String applianceId) {
+        return applianceId != null && profiles.containsKey(applianceId);
+    }
+
+    public int size() {
+        return profiles.size();
+    }
+
+    private List<ApplianceProfile> readProfiles(Path file) {
+        var fileProfiles = new ArrayList<ApplianceProfile>();
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.getName().endsWith(JSON_EXTENSION)) {
+                    readProfile(file, zis).ifPresent(fileProfiles::add);
+                }
+            }
+        } catch (IOException e) {
+            log.atError().log("Error reading profile file {}: {}", file, e.getMessage());
+        }
+        return fileProfiles;
+    }
+
+    private Optional<ApplianceProfile> readProfile(Path file, InputStream json) throws IOException {
+        // the stream of the zip entry is closed with the zip
+        JsonNode root = objectMapper.readTree(json.readAllBytes());
+        if (!root.has("connectionType") || !root.has("key")) {
+            return Optional.empty();
+        }
+
+        // profiles without an appliance id are indexed by the name of the file, e.g. BOSCH-WAT28400-68A40E123456.zip
+        var applianceId = root.path("haId").asText(
+                StringUtils.removeEndIgnoreCase(file.getFileName().toString(), ZIP_EXTENSION));
+        var connectionType = "TLS".equals(root.path("connectionType").asText())
+                ? ConnectionType.TLS
+                : ConnectionType.AES;
+        var profile = ApplianceProfile.builder()
+                .applianceId(applianceId)
+                .connectionType(connectionType)
+                .key(root.path("key").asText())
+                .iv(root.path("iv").asText(null))
+                .source(file)
+                .build();
+        if (!isValid(profile)) {
+            log.atWarn().log("Ignoring profile of {} with invalid secrets in {}", applianceId, file);
+            return Optional.empty();
+        }
+        return Optional.of(profile);
+    }
+
+    private static boolean isValid(ApplianceProfile profile) {
+        try {
+            if (ConnectionType.TLS.equals(profile.getConnectionType())) {
+                return Base64.getUrlDecoder().decode(profile.getKey()).length == PSK_LENGTH;
+            }
+            return profile.getIv() != null
+                    && Base64.getUrlDecoder().decode(profile.getKey()).length == AES_KEY_LENGTH
+                    && Base64.getUrlDecoder().decode(profile.getIv()).length == AES_IV_LENGTH;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package net.bruestel.homeconnect.haproxy.service.credential.model;
+
+import lombok.Builder;
+import lombok.ToString;
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
+import net.bruestel.homeconnect.haproxy.ui.model.HomeApplianceSecrets;
+
+import java.nio.file.Path;
+
+/**
+ * Secrets of one appliance from a "Home Connect Profile Downloader" profile file.
+ */
+@Value
+@Builder
+public class ApplianceProfile {
+    String applianceId;
+    ConnectionType connectionType;
+    // PSK in TLS mode
+    @ToString.Exclude
+    String key;
+    @ToString.Exclude
+    String iv;
+    Path source;
+
+    public HomeApplianceSecrets toSecrets() {
+        return ConnectionType.TLS.equals(connectionType)
+                ? new HomeApplianceSecrets(key, null, null)
+                : new HomeApplianceSecrets(null, key, iv);
+    }
+}
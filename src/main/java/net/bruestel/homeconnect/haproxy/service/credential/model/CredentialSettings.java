@@ -0,0 +1,47 @@
+package net.bruestel.homeconnect.haproxy.service.credential.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+public class CredentialSettings {
+    public static final String PROFILES_PROPERTY = "haproxy.profiles";
+    public static final String AUTO_START_PROPERTY = "haproxy.autoStart";
+
+    private static final String DEFAULT_PROFILES_DIRECTORY = "profiles";
+    private static final String WILDCARD = "*";
+
+    // "Profile Downloader" zip files in this directory are imported at start, null disables it
+    Path profilesDirectory;
+    // ids of the appliances proxied as soon as they are discovered, a trailing * matches by prefix
+    @Builder.Default
+    List<String> autoStart = List.of();
+
+    public static CredentialSettings fromSystemProperties() {
+        var profilesDirectory = System.getProperty(PROFILES_PROPERTY, DEFAULT_PROFILES_DIRECTORY);
+        return CredentialSettings.builder()
+                .profilesDirectory(StringUtils.isBlank(profilesDirectory) ? null : Path.of(profilesDirectory))
+                .autoStart(parseIds(System.getProperty(AUTO_START_PROPERTY)))
+                .build();
+    }
+
+    public boolean isAutoStart(String applianceId) {
+        return applianceId != null && autoStart.stream().anyMatch(pattern -> pattern.endsWith(WILDCARD)
+                ? applianceId.startsWith(StringUtils.removeEnd(pattern, WILDCARD))
+                : applianceId.equals(pattern));
+    }
+
+    private static List<String> parseIds(String value) {
+        return Arrays.stream(StringUtils.split(StringUtils.defaultString(value), ','))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .toList();
+    }
+}
@@ -0,0 +1,13 @@
+package net.bruestel.homeconnect.haproxy.service.credential.model;
+
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.util.List;
+
+@Value
+public class ProfileImportResult {
+    List<ApplianceProfile> imported;
+    // files without a readable profile
+    List<Path> failed;
+}
@@ -0,0 +1,129 @@
+package net.bruestel.homeconnect.haproxy.service.description;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled device descriptions per appliance. A profile file is parsed once, the compiled table is written to the
+ * cache directory and read from there as long as the profile file is not newer.
+ */
+@Slf4j
+public class DescriptionCache {
+    public static final String DIRECTORY_PROPERTY = "haproxy.descriptionCache";
+    private static final String DEFAULT_DIRECTORY = "description-cache";
+    private static final String FILE_EXTENSION = ".bin";
+
+    private final Path directory;
+    private final DeviceDescriptionParser parser = new DeviceDescriptionParser();
+    private final Map<String, FeatureTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory cache directory, {@code null} keeps the compiled descriptions in memory only
+     */
+    public DescriptionCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Uses the directory given by the system property {@value #DIRECTORY_PROPERTY} or {@value #DEFAULT_DIRECTORY}
+     * in the working directory. An empty property disables the disk cache.
+     */
+    public static DescriptionCache load() {
+        var directory = System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY);
+        return new DescriptionCache(StringUtils.isBlank(directory) ? null : Path.of(directory));
+    }
+
+    /**
+     * @param profileFile profile file of the appliance, {@code null} if there is none
+     * @return the compiled description, or empty if it is neither cached nor part of the profile file
+     */
+    public Optional<FeatureTable> get(String applianceId, Path profileFile) {
+        if (applianceId == null) {
+            return Optional.empty();
+        }
+
+        var cacheFile = directory != null ? directory.resolve(fileName(applianceId)) : null;
+        var table = tables.get(applianceId);
+        if (table != null && (cacheFile == null || !isOutdated(cacheFile, profileFile))) {
+            return Optional.of(table);
+        }
+
+        table = isOutdated(cacheFile, profileFile) ? compile(profileFile, cacheFile) : read(cacheFile);
+        if (table != null) {
+            tables.put(applianceId, table);
+        }
+        return Optional.ofNullable(table);
+    }
+
+    private FeatureTable compile(Path profileFile, Path cacheFile) {
+        try {
+            var table = parser.parse(profileFile).orElse(null);
+            if (table != null && cacheFile != null) {
+                write(table, cacheFile);
+            }
+            return table;
+        } catch (IOException e) {
+            log.atError().log("Error reading device description from {}: {}", profileFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static FeatureTable read(Path cacheFile) {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            return FeatureTable.read(in);
+        } catch (IOException e) {
+            log.atWarn().log("Ignoring invalid description cache {}: {}", cacheFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(FeatureTable table, Path cacheFile) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            var temporaryFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                table.write(out);
+            }
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.atError().log("Error writing description cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    // the profile file is compiled if there is no cache file or it is newer
+    private static boolean isOutdated(Path cacheFile, Path profileFile) {
+        if (profileFile == null || !Files.isRegularFile(profileFile)) {
+            return false;
+        }
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return true;
+        }
+
+        try {
+            return Files.getLastModifiedTime(profileFile).compareTo(Files.getLastModifiedTime(cacheFile)) > 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static String fileName(String applianceId) {
+        return applianceId.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_EXTENSION;
+    }
+}
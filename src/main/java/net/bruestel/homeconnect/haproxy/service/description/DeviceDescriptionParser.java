@@ -0,0 +1,179 @@
+package net.bruestel.homeconnect.haproxy.service.description;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.description.model.FeatureKind;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Compiles the feature mapping ({@code *_FeatureMapping.xml}: uid to name, enumeration values to names) and the
+ * device description ({@code *_DeviceDescription.xml}: kind and enumeration of every uid) of a "Profile Downloader"
+ * profile file into a {@link FeatureTable}. Uids and enumeration ids are hexadecimal in both files.
+ */
+@Slf4j
+public class DeviceDescriptionParser {
+    private static final String FEATURE_MAPPING_SUFFIX = "featuremapping.xml";
+    private static final String DEVICE_DESCRIPTION_SUFFIX = "devicedescription.xml";
+    private static final int HEX = 16;
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public DeviceDescriptionParser() {
+        xmlInputFactory = XMLInputFactory.newFactory();
+        // profile files are data, no external entities
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return the compiled description, or empty if the profile file has no feature mapping
+     */
+    public Optional<FeatureTable> parse(Path profileFile) throws IOException {
+        byte[] featureMapping = null;
+        byte[] deviceDescription = null;
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(profileFile))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                var name = entry.getName().toLowerCase(Locale.ROOT);
+                if (name.endsWith(FEATURE_MAPPING_SUFFIX)) {
+                    featureMapping = zis.readAllBytes();
+                } else if (name.endsWith(DEVICE_DESCRIPTION_SUFFIX)) {
+                    deviceDescription = zis.readAllBytes();
+                }
+            }
+        }
+
+        if (featureMapping == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(compile(featureMapping, deviceDescription));
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid device description in " + profileFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    FeatureTable compile(byte[] featureMapping, byte[] deviceDescription) throws XMLStreamException {
+        var featureNames = new LinkedHashMap<Integer, String>();
+        var enumValues = new LinkedHashMap<Integer, Map<Integer, String>>();
+        readFeatureMapping(featureMapping, featureNames, enumValues);
+
+        var kinds = new HashMap<Integer, FeatureKind>();
+        var enumerations = new HashMap<Integer, Integer>();
+        if (deviceDescription != null) {
+            readDeviceDescription(deviceDescription, kinds, enumerations);
+        }
+
+        var builder = FeatureTable.builder();
+        featureNames.forEach((uid, name) -> builder.feature(uid,
+                name,
+                kinds.getOrDefault(uid, FeatureKind.FEATURE),
+                enumerations.getOrDefault(uid, FeatureTable.NO_ENUMERATION)));
+        enumValues.forEach((enumerationId, values) ->
+                values.forEach((value, name) -> builder.enumValue(enumerationId, value, name)));
+        var table = builder.build();
+        log.atInfo().log("Compiled device description with {} feature(s) and {} enumeration(s).",
+                table.size(), enumValues.size());
+        return table;
+    }
+
+    private void readFeatureMapping(byte[] xml,
+                                    Map<Integer, String> featureNames,
+                                    Map<Integer, Map<Integer, String>> enumValues) throws XMLStreamException {
+        var reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(xml));
+        try {
+            Map<Integer, String> currentEnum = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "feature" -> {
+                        var uid = parseHex(reader.getAttributeValue(null, "refUID"));
+                        var name = reader.getElementText().trim();
+                        if (uid != null && !name.isEmpty()) {
+                            featureNames.put(uid, name);
+                        }
+                    }
+                    case "enumDescription" -> {
+                        var enumerationId = parseHex(reader.getAttributeValue(null, "refENID"));
+                        currentEnum = enumerationId != null
+                                ? enumValues.computeIfAbsent(enumerationId, id -> new LinkedHashMap<>())
+                                : null;
+                    }
+                    case "enumMember" -> {
+                        var value = parseInt(reader.getAttributeValue(null, "refValue"));
+                        var name = reader.getElementText().trim();
+                        if (currentEnum != null && value != null) {
+                            currentEnum.put(value, name);
+                        }
+                    }
+                    default -> {
+                        // errors and other sections are not needed
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readDeviceDescription(byte[] xml,
+                                       Map<Integer, FeatureKind> kinds,
+                                       Map<Integer, Integer> enumerations) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(xml));
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                var kind = FeatureKind.ofElement(reader.getLocalName());
+                var uid = parseHex(reader.getAttributeValue(null, "uid"));
+                if (kind == null || uid == null) {
+                    continue;
+                }
+                kinds.put(uid, kind);
+                var enumerationId = parseHex(reader.getAttributeValue(null, "enumerationType"));
+                if (enumerationId != null) {
+                    enumerations.put(uid, enumerationId);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Integer parseHex(String value) {
+        try {
+            return StringUtils.isBlank(value) ? null : Integer.parseInt(value.trim(), HEX);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return StringUtils.isBlank(value) ? null : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
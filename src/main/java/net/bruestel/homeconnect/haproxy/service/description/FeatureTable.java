@@ -0,0 +1,284 @@
+package net.bruestel.homeconnect.haproxy.service.description;
+
+import net.bruestel.homeconnect.haproxy.service.description.model.FeatureKind;
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compiled device description of one appliance: uid to feature name, kind and enumeration, and enumeration value to
+ * name. Both are open addressing tables over primitive keys, all names are created when the table is built, so a
+ * lookup never allocates. Immutable and thread-safe once built.
+ */
+public final class FeatureTable {
+    private static final int MAGIC = 0x48434654; // HCFT
+    private static final int FORMAT_VERSION = 1;
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+    private static final long NO_ENUM_KEY = Long.MIN_VALUE;
+    public static final int NO_ENUMERATION = -1;
+
+    private final int[] uids;
+    private final String[] names;
+    private final byte[] kinds;
+    private final int[] enumerationIds;
+    private final int size;
+
+    // (enumeration id, value) to value name
+    private final long[] enumKeys;
+    private final String[] enumNames;
+    private final int enumSize;
+
+    private FeatureTable(Builder builder) {
+        var featureCapacity = capacityFor(builder.featureCount);
+        uids = new int[featureCapacity];
+        Arrays.fill(uids, DataItem.NO_UID);
+        names = new String[featureCapacity];
+        kinds = new byte[featureCapacity];
+        enumerationIds = new int[featureCapacity];
+        var featureCount = 0;
+        for (int i = 0; i < builder.featureCount; i++) {
+            if (insertFeature(builder.uids[i], builder.names[i], builder.kinds[i], builder.enumerationIds[i])) {
+                featureCount++;
+            }
+        }
+        size = featureCount;
+
+        var enumCapacity = capacityFor(builder.enumCount);
+        enumKeys = new long[enumCapacity];
+        Arrays.fill(enumKeys, NO_ENUM_KEY);
+        enumNames = new String[enumCapacity];
+        var enumCount = 0;
+        for (int i = 0; i < builder.enumCount; i++) {
+            if (insertEnum(builder.enumKeys[i], builder.enumNames[i])) {
+                enumCount++;
+            }
+        }
+        enumSize = enumCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int uid) {
+        return slotOf(uid) >= 0;
+    }
+
+    /**
+     * @return the feature name, e.g. {@code BSH.Common.Status.DoorState}, or {@code null} if the uid is unknown
+     */
+    public String nameOf(int uid) {
+        var slot = slotOf(uid);
+        return slot >= 0 ? names[slot] : null;
+    }
+
+    public FeatureKind kindOf(int uid) {
+        var slot = slotOf(uid);
+        return slot >= 0 ? FeatureKind.ofOrdinal(kinds[slot]) : null;
+    }
+
+    public int enumerationOf(int uid) {
+        var slot = slotOf(uid);
+        return slot >= 0 ? enumerationIds[slot] : NO_ENUMERATION;
+    }
+
+    /**
+     * @return the name of the value of an enumerated feature, e.g. {@code Open}, or {@code null} if there is none
+     */
+    public String enumValueNameOf(int uid, int value) {
+        var enumerationId = enumerationOf(uid);
+        if (enumerationId == NO_ENUMERATION) {
+            return null;
+        }
+
+        var key = enumKey(enumerationId, value);
+        var mask = enumKeys.length - 1;
+        var slot = hash(key) & mask;
+        while (enumKeys[slot] != NO_ENUM_KEY) {
+            if (enumKeys[slot] == key) {
+                return enumNames[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Appends the name of the feature of a data item and the name of its value, e.g.
+     * {@code BSH.Common.Status.DoorState = Open}. Nothing is appended for unknown uids.
+     */
+    public void describe(DataItem dataItem, StringBuilder out) {
+        var name = dataItem.hasUid() ? nameOf(dataItem.getUid()) : null;
+        if (name == null) {
+            return;
+        }
+
+        out.append(name);
+        var valueName = dataItem.hasIntValue() ? enumValueNameOf(dataItem.getUid(), dataItem.getIntValue()) : null;
+        if (valueName != null) {
+            out.append(" = ").append(valueName);
+        } else if (dataItem.hasValue()) {
+            out.append(" = ").append(dataItem.getRawValue());
+        }
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(size);
+        for (int slot = 0; slot < uids.length; slot++) {
+            if (uids[slot] != DataItem.NO_UID) {
+                out.writeInt(uids[slot]);
+                out.writeUTF(names[slot]);
+                out.writeByte(kinds[slot]);
+                out.writeInt(enumerationIds[slot]);
+            }
+        }
+        out.writeInt(enumSize);
+        for (int slot = 0; slot < enumKeys.length; slot++) {
+            if (enumKeys[slot] != NO_ENUM_KEY) {
+                out.writeLong(enumKeys[slot]);
+                out.writeUTF(enumNames[slot]);
+            }
+        }
+    }
+
+    public static FeatureTable read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a feature table of format version " + FORMAT_VERSION);
+        }
+
+        var builder = builder();
+        var featureCount = in.readInt();
+        for (int i = 0; i < featureCount; i++) {
+            var uid = in.readInt();
+            var name = in.readUTF();
+            var kind = in.readByte();
+            if (kind < 0 || kind >= FeatureKind.values().length) {
+                throw new IOException("Invalid feature kind " + kind);
+            }
+            builder.feature(uid, name, FeatureKind.ofOrdinal(kind), in.readInt());
+        }
+        var enumCount = in.readInt();
+        for (int i = 0; i < enumCount; i++) {
+            var key = in.readLong();
+            builder.enumValue((int) (key >> 32), (int) key, in.readUTF());
+        }
+        return builder.build();
+    }
+
+    private int slotOf(int uid) {
+        var mask = uids.length - 1;
+        var slot = hash(uid) & mask;
+        while (uids[slot] != DataItem.NO_UID) {
+            if (uids[slot] == uid) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean insertFeature(int uid, String name, FeatureKind kind, int enumerationId) {
+        var mask = uids.length - 1;
+        var slot = hash(uid) & mask;
+        while (uids[slot] != DataItem.NO_UID && uids[slot] != uid) {
+            slot = (slot + 1) & mask;
+        }
+        var added = uids[slot] == DataItem.NO_UID;
+        uids[slot] = uid;
+        names[slot] = name;
+        kinds[slot] = (byte) kind.ordinal();
+        enumerationIds[slot] = enumerationId;
+        return added;
+    }
+
+    private boolean insertEnum(long key, String name) {
+        var mask = enumKeys.length - 1;
+        var slot = hash(key) & mask;
+        while (enumKeys[slot] != NO_ENUM_KEY && enumKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        var added = enumKeys[slot] == NO_ENUM_KEY;
+        enumKeys[slot] = key;
+        enumNames[slot] = name;
+        return added;
+    }
+
+    private static int capacityFor(int count) {
+        var capacity = 16;
+        while (count > capacity * MAX_LOAD_FACTOR) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static long enumKey(int enumerationId, int value) {
+        return ((long) enumerationId << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private static int hash(int uid) {
+        var h = uid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(long key) {
+        return hash((int) (key ^ (key >>> 32)));
+    }
+
+    /**
+     * Collects the features and enumeration values, a later entry of a uid or value replaces the earlier one.
+     */
+    public static final class Builder {
+        private int[] uids = new int[64];
+        private String[] names = new String[64];
+        private FeatureKind[] kinds = new FeatureKind[64];
+        private int[] enumerationIds = new int[64];
+        private int featureCount;
+
+        private long[] enumKeys = new long[64];
+        private String[] enumNames = new String[64];
+        private int enumCount;
+
+        private Builder() {
+        }
+
+        public Builder feature(int uid, String name, FeatureKind kind, int enumerationId) {
+            if (featureCount == uids.length) {
+                var capacity = uids.length * 2;
+                uids = Arrays.copyOf(uids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                enumerationIds = Arrays.copyOf(enumerationIds, capacity);
+            }
+            uids[featureCount] = uid;
+            names[featureCount] = name;
+            kinds[featureCount] = kind;
+            enumerationIds[featureCount] = enumerationId;
+            featureCount++;
+            return this;
+        }
+
+        public Builder enumValue(int enumerationId, int value, String name) {
+            if (enumCount == enumKeys.length) {
+                enumKeys = Arrays.copyOf(enumKeys, enumKeys.length * 2);
+                enumNames = Arrays.copyOf(enumNames, enumNames.length * 2);
+            }
+            enumKeys[enumCount] = enumKey(enumerationId, value);
+            enumNames[enumCount] = name;
+            enumCount++;
+            return this;
+        }
+
+        public FeatureTable build() {
+            return new FeatureTable(this);
+        }
+    }
+}
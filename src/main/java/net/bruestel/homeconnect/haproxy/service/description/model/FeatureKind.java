@@ -0,0 +1,43 @@
+package net.bruestel.homeconnect.haproxy.service.description.model;
+
+import java.util.Map;
+
+/**
+ * Kind of a feature, named after the element of the device description it is declared by.
+ */
+public enum FeatureKind {
+    STATUS,
+    SETTING,
+    EVENT,
+    COMMAND,
+    OPTION,
+    PROGRAM,
+    ACTIVE_PROGRAM,
+    SELECTED_PROGRAM,
+    PROTECTION_PORT,
+    // only named by the feature mapping
+    FEATURE;
+
+    private static final FeatureKind[] VALUES = values();
+    private static final Map<String, FeatureKind> BY_ELEMENT = Map.of(
+            "status", STATUS,
+            "setting", SETTING,
+            "event", EVENT,
+            "command", COMMAND,
+            "option", OPTION,
+            "program", PROGRAM,
+            "activeProgram", ACTIVE_PROGRAM,
+            "selectedProgram", SELECTED_PROGRAM,
+            "protectionPort", PROTECTION_PORT);
+
+    /**
+     * @return the kind declared by the element, or {@code null} if the element does not declare a feature
+     */
+    public static FeatureKind ofElement(String elementName) {
+        return BY_ELEMENT.get(elementName);
+    }
+
+    public static FeatureKind ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
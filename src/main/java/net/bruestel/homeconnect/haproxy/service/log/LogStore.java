@@ -0,0 +1,466 @@
+package net.bruestel.homeconnect.haproxy.service.log;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.capture.CaptureDictionary;
+import net.bruestel.homeconnect.haproxy.service.capture.CaptureWriter;
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+import net.bruestel.homeconnect.haproxy.service.description.FeatureTable;
+import net.bruestel.homeconnect.haproxy.service.message.MessageDecoder;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message log in columns: timestamps as epoch nanos, session and sender as small ints, and the UTF-8 payloads in a
+ * content-addressed {@link PayloadStore}. The sID and msgID values are cut out of the payloads and kept per entry,
+ * so repeated NOTIFYs and status echoes share one body. An entry costs a few dozen bytes of heap, messages are
+ * only decoded again when they are read.
+ * <p>
+ * Entries are addressed by sequence number. Once the capacity is reached, the oldest entries are evicted and their
+ * bodies released. Thread-safe, entries are appended by the proxy threads and read by the UI.
+ */
+@Slf4j
+public class LogStore {
+    public static final String CAPACITY_PROPERTY = "haproxy.logCapacity";
+    public static final int DEFAULT_CAPACITY = 1_000_000;
+    public static final long NO_RESPONSE_TIME = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // messages the deflate dictionary of a capture is trained on
+    private static final int TRAINING_SAMPLES = 2000;
+    private static final Sender[] SENDERS = Sender.values();
+
+    private final Object lock = new Object();
+    private final int capacity;
+    // epoch nanos of System.nanoTime() zero, no clock is read per message
+    private final long epochNanosOffset;
+
+    // ring of entries, the slot of a sequence number is sequence % length once the ring is full
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] sessions = new int[INITIAL_CAPACITY];
+    private byte[] senders = new byte[INITIAL_CAPACITY];
+    private long[] responseTimes = new long[INITIAL_CAPACITY];
+    private int[] tagSets = new int[INITIAL_CAPACITY];
+    private int[] bodies = new int[INITIAL_CAPACITY];
+    private long[] sids = new long[INITIAL_CAPACITY];
+    private long[] msgIds = new long[INITIAL_CAPACITY];
+    // sequence number of the oldest and the next entry
+    private long first;
+    private long next;
+    private long deduplicated;
+
+    private final List<String> sessionIds = new ArrayList<>();
+    private final Map<String, Integer> sessionIndex = new HashMap<>();
+    private final List<List<String>> tagSetList = new ArrayList<>(List.of(List.of()));
+    private final Map<List<String>, Integer> tagSetIndex = new HashMap<>(Map.of(List.of(), 0));
+
+    private final PayloadStore payloadStore = new PayloadStore();
+    // body of the entry being appended, with the header values cut out
+    private byte[] scratch = new byte[4096];
+
+    private final MessageDecoder messageDecoder = new MessageDecoder();
+
+    // names the uids of the messages, null if the device description is unknown
+    @Getter
+    @Setter
+    private volatile FeatureTable featureTable;
+    // called after every append, e.g. to refresh a view
+    private final List<Runnable> appendListeners = new CopyOnWriteArrayList<>();
+
+    public LogStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries kept, older ones are evicted
+     */
+    public LogStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        var now = Instant.now();
+        epochNanosOffset = TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano() - System.nanoTime();
+    }
+
+    public static LogStore fromSystemProperties() {
+        var capacity = DEFAULT_CAPACITY;
+        var value = System.getProperty(CAPACITY_PROPERTY);
+        if (value != null && !value.isBlank()) {
+            try {
+                capacity = Integer.parseInt(value.strip());
+            } catch (NumberFormatException e) {
+                log.atWarn().log("Invalid value of {}: {}", CAPACITY_PROPERTY, value);
+            }
+        }
+        return new LogStore(Math.max(capacity, 1));
+    }
+
+    public void addAppendListener(Runnable listener) {
+        appendListeners.add(listener);
+    }
+
+    public void removeAppendListener(Runnable listener) {
+        appendListeners.remove(listener);
+    }
+
+    /**
+     * @param responseTime response time in milliseconds, {@code null} if there is none
+     * @return the sequence number of the entry
+     */
+    public long append(String sessionId, Sender sender, Message message, Long responseTime) {
+        var timestamp = epochNanosOffset + System.nanoTime();
+        long sequence;
+        synchronized (lock) {
+            if (next - first == capacity) {
+                payloadStore.release(bodies[slot(first)]);
+                first++;
+            } else if (next == timestamps.length) {
+                grow();
+            }
+
+            sequence = next;
+            var slot = slot(sequence);
+            timestamps[slot] = timestamp;
+            sessions[slot] = sessionIndex.computeIfAbsent(sessionId, id -> {
+                sessionIds.add(id);
+                return sessionIds.size() - 1;
+            });
+            senders[slot] = (byte) sender.ordinal();
+            responseTimes[slot] = responseTime != null ? responseTime : NO_RESPONSE_TIME;
+            tagSets[slot] = message.getTags().isEmpty() ? 0 : tagSetIndex.computeIfAbsent(message.getTags(), tags -> {
+                tagSetList.add(List.copyOf(tags));
+                return tagSetList.size() - 1;
+            });
+            sids[slot] = message.getSid();
+            msgIds[slot] = message.getMsgId();
+            bodies[slot] = storeBody(message);
+            next++;
+        }
+
+        appendListeners.forEach(Runnable::run);
+        return sequence;
+    }
+
+    /**
+     * @return sequence number of the oldest entry still kept
+     */
+    public long getFirstSequence() {
+        synchronized (lock) {
+            return first;
+        }
+    }
+
+    /**
+     * @return sequence number the next entry gets
+     */
+    public long getNextSequence() {
+        synchronized (lock) {
+            return next;
+        }
+    }
+
+    public boolean contains(long sequence) {
+        synchronized (lock) {
+            return sequence >= first && sequence < next;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTimestampNanos(long sequence) {
+        synchronized (lock) {
+            return timestamps[checkSlot(sequence)];
+        }
+    }
+
+    public String getSessionId(long sequence) {
+        synchronized (lock) {
+            return sessionIds.get(sessions[checkSlot(sequence)]);
+        }
+    }
+
+    public Sender getSender(long sequence) {
+        synchronized (lock) {
+            return SENDERS[senders[checkSlot(sequence)]];
+        }
+    }
+
+    /**
+     * @return the response time in milliseconds or {@link #NO_RESPONSE_TIME}
+     */
+    public long getResponseTime(long sequence) {
+        synchronized (lock) {
+            return responseTimes[checkSlot(sequence)];
+        }
+    }
+
+    public List<String> getTags(long sequence) {
+        synchronized (lock) {
+            return tagSetList.get(tagSets[checkSlot(sequence)]);
+        }
+    }
+
+    /**
+     * @return {@code true} if the entry repeats the previous one: same session, sender and body, only the sID and
+     * msgID may differ
+     */
+    public boolean isRepeat(long sequence) {
+        synchronized (lock) {
+            var slot = checkSlot(sequence);
+            if (sequence == first) {
+                return false;
+            }
+            var previous = slot(sequence - 1);
+            return bodies[slot] == bodies[previous] && sessions[slot] == sessions[previous]
+                    && senders[slot] == senders[previous];
+        }
+    }
+
+    /**
+     * @return the payload as it was received, the header values are put back into the body
+     */
+    public byte[] getPayload(long sequence) {
+        synchronized (lock) {
+            var slot = checkSlot(sequence);
+            var body = bodies[slot];
+            var length = payloadStore.length(body);
+            var sidPosition = payloadStore.sidPosition(body);
+            var msgIdPosition = payloadStore.msgIdPosition(body);
+            if (sidPosition == PayloadStore.NO_POSITION && msgIdPosition == PayloadStore.NO_POSITION) {
+                var payload = new byte[length];
+                payloadStore.copy(body, payload, 0, 0, length);
+                return payload;
+            }
+
+            var sid = sidPosition != PayloadStore.NO_POSITION ? Long.toString(sids[slot]) : "";
+            var msgId = msgIdPosition != PayloadStore.NO_POSITION ? Long.toString(msgIds[slot]) : "";
+            var payload = new byte[length + sid.length() + msgId.length()];
+            // the value at the lower position goes in first, sID wins a tie as it was cut out first
+            var sidFirst = msgIdPosition == PayloadStore.NO_POSITION
+                    || (sidPosition != PayloadStore.NO_POSITION && sidPosition <= msgIdPosition);
+            var firstPosition = sidFirst ? sidPosition : msgIdPosition;
+            var firstValue = sidFirst ? sid : msgId;
+            var secondPosition = sidFirst ? msgIdPosition : sidPosition;
+            var secondValue = sidFirst ? msgId : sid;
+
+            var written = 0;
+            var copied = 0;
+            payloadStore.copy(body, payload, 0, 0, firstPosition);
+            written += firstPosition;
+            copied += firstPosition;
+            written = putAscii(firstValue, payload, written);
+            if (secondPosition != PayloadStore.NO_POSITION) {
+                payloadStore.copy(body, payload, written, copied, secondPosition - copied);
+                written += secondPosition - copied;
+                copied = secondPosition;
+                written = putAscii(secondValue, payload, written);
+            }
+            payloadStore.copy(body, payload, written, copied, length - copied);
+            return payload;
+        }
+    }
+
+    /**
+     * Reads all values of an entry at once, so an eviction cannot happen in between.
+     *
+     * @return the entry, {@code null} if it is not kept (anymore)
+     */
+    public CaptureRecord getRecord(long sequence) {
+        synchronized (lock) {
+            if (!contains(sequence)) {
+                return null;
+            }
+            var slot = slot(sequence);
+            return CaptureRecord.builder()
+                    .timestampNanos(timestamps[slot])
+                    .sessionId(sessionIds.get(sessions[slot]))
+                    .sender(SENDERS[senders[slot]])
+                    .responseTime(responseTimes[slot])
+                    .tags(tagSetList.get(tagSets[slot]))
+                    .payload(getPayload(sequence))
+                    .build();
+        }
+    }
+
+    /**
+     * Decodes the message of an entry again, with the tags it was logged with.
+     */
+    public Message getMessage(CaptureRecord record) {
+        var payload = record.getPayload();
+        var tags = record.getTags();
+        try {
+            Message message;
+            synchronized (messageDecoder) {
+                message = messageDecoder.decode(payload);
+            }
+            return tags.isEmpty() ? message : message.toBuilder().tags(tags).build();
+        } catch (IOException e) {
+            log.atError().log("Error decoding logged message: {}", e.getMessage());
+            return Message.builder().payload(payload).data(List.of()).tags(tags).build();
+        }
+    }
+
+    /**
+     * Writes the kept entries to a capture file, the deflate dictionary is trained on the first of them.
+     *
+     * @return number of entries written
+     */
+    public long writeCapture(Path file) throws IOException {
+        var from = getFirstSequence();
+        var to = getNextSequence();
+        var samples = new ArrayList<byte[]>();
+        for (var sequence = from; sequence < to && samples.size() < TRAINING_SAMPLES; sequence++) {
+            var record = getRecord(sequence);
+            if (record != null) {
+                samples.add(record.getPayload());
+            }
+        }
+
+        var dictionary = CaptureDictionary.train(samples, CaptureDictionary.DEFAULT_SIZE);
+        try (var writer = CaptureWriter.create(file, dictionary)) {
+            for (var sequence = from; sequence < to; sequence++) {
+                var record = getRecord(sequence);
+                // evicted while writing
+                if (record != null) {
+                    writer.write(record);
+                }
+            }
+            return writer.getRecordCount();
+        }
+    }
+
+    public Map<String, Long> getStatistics() {
+        synchronized (lock) {
+            var statistics = new LinkedHashMap<String, Long>();
+            statistics.put("Log entries", next - first);
+            statistics.put("Log entries evicted", first);
+            statistics.put("Log unique bodies", (long) payloadStore.uniqueBodies());
+            statistics.put("Log deduplicated entries", deduplicated);
+            statistics.put("Log body bytes", payloadStore.storedBytes());
+            statistics.put("Log heap (bytes)", (long) timestamps.length * (Long.BYTES * 4 + Integer.BYTES * 3 + 1));
+            statistics.put("Log off-heap (bytes)", payloadStore.offHeapBytes());
+            return statistics;
+        }
+    }
+
+    // called with the lock held
+    private int storeBody(Message message) {
+        var payload = message.getPayload();
+        var sidCut = isCanonical(payload, message.getSidOffset(), message.getSidLength(), message.getSid());
+        var msgIdCut = isCanonical(payload, message.getMsgIdOffset(), message.getMsgIdLength(), message.getMsgId());
+        if (!sidCut && !msgIdCut) {
+            var body = payloadStore.add(payload, payload.length, PayloadStore.NO_POSITION, PayloadStore.NO_POSITION);
+            countDeduplicated(body);
+            return body;
+        }
+
+        if (scratch.length < payload.length) {
+            scratch = new byte[Math.max(payload.length, scratch.length * 2)];
+        }
+        // cut the values out in the order they appear, positions are given in the cut body
+        var sidOffset = sidCut ? message.getSidOffset() : Integer.MAX_VALUE;
+        var msgIdOffset = msgIdCut ? message.getMsgIdOffset() : Integer.MAX_VALUE;
+        var sidFirst = sidOffset <= msgIdOffset;
+        var firstOffset = sidFirst ? sidOffset : msgIdOffset;
+        var firstLength = sidFirst ? message.getSidLength() : message.getMsgIdLength();
+        var secondOffset = sidFirst ? msgIdOffset : sidOffset;
+        var secondLength = sidFirst ? message.getMsgIdLength() : message.getSidLength();
+
+        System.arraycopy(payload, 0, scratch, 0, firstOffset);
+        var length = firstOffset;
+        var copied = firstOffset + firstLength;
+        var secondPosition = PayloadStore.NO_POSITION;
+        if (secondOffset != Integer.MAX_VALUE) {
+            System.arraycopy(payload, copied, scratch, length, secondOffset - copied);
+            length += secondOffset - copied;
+            secondPosition = length;
+            copied = secondOffset + secondLength;
+        }
+        System.arraycopy(payload, copied, scratch, length, payload.length - copied);
+        length += payload.length - copied;
+
+        var sidPosition = !sidCut ? PayloadStore.NO_POSITION : sidFirst ? firstOffset : secondPosition;
+        var msgIdPosition = !msgIdCut ? PayloadStore.NO_POSITION : sidFirst ? secondPosition : firstOffset;
+        var body = payloadStore.add(scratch, length, sidPosition, msgIdPosition);
+        countDeduplicated(body);
+        return body;
+    }
+
+    // called with the lock held
+    private void countDeduplicated(int body) {
+        if (payloadStore.referenceCount(body) > 1) {
+            deduplicated++;
+        }
+    }
+
+    // called with the lock held
+    private void grow() {
+        var newCapacity = (int) Math.min((long) timestamps.length * 2, capacity);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        sessions = Arrays.copyOf(sessions, newCapacity);
+        senders = Arrays.copyOf(senders, newCapacity);
+        responseTimes = Arrays.copyOf(responseTimes, newCapacity);
+        tagSets = Arrays.copyOf(tagSets, newCapacity);
+        bodies = Arrays.copyOf(bodies, newCapacity);
+        sids = Arrays.copyOf(sids, newCapacity);
+        msgIds = Arrays.copyOf(msgIds, newCapacity);
+    }
+
+    // the ring only grows before the first eviction, the slot stays valid for all kept entries
+    private int slot(long sequence) {
+        return (int) (sequence % timestamps.length);
+    }
+
+    private int checkSlot(long sequence) {
+        if (sequence < first || sequence >= next) {
+            throw new IndexOutOfBoundsException("Log entry " + sequence + " is not kept (" + first + ".." + next + ")");
+        }
+        return slot(sequence);
+    }
+
+    // true if the header value is written as plain decimal, so it can be put back from the number
+    private static boolean isCanonical(byte[] payload, int offset, int length, long value) {
+        if (length <= 0 || offset < 0 || offset + length > payload.length) {
+            return false;
+        }
+
+        var remaining = value;
+        var position = offset + length - 1;
+        var negative = remaining < 0;
+        do {
+            var digit = (int) Math.abs(remaining % 10);
+            if (position < offset || payload[position--] != '0' + digit) {
+                return false;
+            }
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative && (position < offset || payload[position--] != '-')) {
+            return false;
+        }
+        return position == offset - 1;
+    }
+
+    private static int putAscii(String value, byte[] destination, int offset) {
+        for (int i = 0; i < value.length(); i++) {
+            destination[offset++] = (byte) value.charAt(i);
+        }
+        return offset;
+    }
+}
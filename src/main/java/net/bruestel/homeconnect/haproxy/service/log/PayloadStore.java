@@ -0,0 +1,292 @@
+package net.bruestel.homeconnect.haproxy.service.log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Content-addressed store of message bodies in an off-heap arena. Each unique body is kept once and reference
+ * counted, the entries of the log refer to it by id. The arena is allocated in chunks, a chunk is released once
+ * none of its bodies is referenced any more. A chunk that is mostly free is compacted: its remaining bodies move to
+ * the current chunk, so a few long-lived bodies do not pin a whole chunk. Not thread-safe.
+ */
+class PayloadStore {
+    static final int NO_POSITION = -1;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    // a chunk with less than 1/8 of its bytes in use is compacted
+    private static final int COMPACTION_RATIO = 8;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY = -1;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // per body id
+    private long[] refs = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] sidPositions = new int[INITIAL_CAPACITY];
+    private int[] msgIdPositions = new int[INITIAL_CAPACITY];
+    private int[] refCounts = new int[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int bodyCount;
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeIdCount;
+
+    // open addressing index from hash to body id
+    private int[] index = newIndex(INITIAL_CAPACITY * 2);
+    private int liveBodies;
+
+    // released chunks leave a null slot, which the next chunk takes
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private int[] chunkLiveBytes = new int[16];
+    private int[] freeChunkIndices = new int[16];
+    private int freeChunkCount;
+    private ByteBuffer chunk;
+    private int chunkIndex;
+    private long offHeapBytes;
+    private long storedBytes;
+
+    /**
+     * Adds a reference to the body, it is copied into the arena if it is not stored yet.
+     *
+     * @param sidPosition   position of the sID value in the body, {@link #NO_POSITION} if it was not cut out
+     * @param msgIdPosition position of the msgID value in the body, {@link #NO_POSITION} if it was not cut out
+     * @return the id of the body
+     */
+    int add(byte[] body, int length, int sidPosition, int msgIdPosition) {
+        var hash = hash(body, length, sidPosition, msgIdPosition);
+        var mask = index.length - 1;
+        var slot = (int) hash & mask;
+        while (index[slot] != EMPTY) {
+            var id = index[slot];
+            if (hashes[id] == hash && sidPositions[id] == sidPosition && msgIdPositions[id] == msgIdPosition
+                    && contentEquals(id, body, length)) {
+                refCounts[id]++;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        var id = newId();
+        refs[id] = store(body, length);
+        lengths[id] = length;
+        sidPositions[id] = sidPosition;
+        msgIdPositions[id] = msgIdPosition;
+        refCounts[id] = 1;
+        hashes[id] = hash;
+        index[slot] = id;
+        liveBodies++;
+        if (liveBodies > index.length / 2) {
+            rehash(index.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Drops a reference, the body is freed with the last one.
+     */
+    void release(int id) {
+        if (--refCounts[id] > 0) {
+            return;
+        }
+
+        removeFromIndex(id);
+        liveBodies--;
+        var released = (int) (refs[id] >>> 32);
+        chunkLiveBytes[released] -= lengths[id];
+        storedBytes -= lengths[id];
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeIdCount++] = id;
+
+        if (released == chunkIndex) {
+            return;
+        }
+        if (chunkLiveBytes[released] > 0
+                && chunkLiveBytes[released] < chunks.get(released).capacity() / COMPACTION_RATIO) {
+            compact(released);
+        }
+        if (chunkLiveBytes[released] == 0) {
+            freeChunk(released);
+        }
+    }
+
+    int length(int id) {
+        return lengths[id];
+    }
+
+    int referenceCount(int id) {
+        return refCounts[id];
+    }
+
+    int sidPosition(int id) {
+        return sidPositions[id];
+    }
+
+    int msgIdPosition(int id) {
+        return msgIdPositions[id];
+    }
+
+    void copy(int id, byte[] destination, int destinationOffset, int sourceOffset, int length) {
+        var ref = refs[id];
+        chunks.get((int) (ref >>> 32)).get((int) ref + sourceOffset, destination, destinationOffset, length);
+    }
+
+    int uniqueBodies() {
+        return liveBodies;
+    }
+
+    long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    long storedBytes() {
+        return storedBytes;
+    }
+
+    private long store(byte[] body, int length) {
+        if (chunk == null || chunk.remaining() < length) {
+            var previous = chunk != null ? chunkIndex : -1;
+            chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length));
+            if (freeChunkCount > 0) {
+                chunkIndex = freeChunkIndices[--freeChunkCount];
+                chunks.set(chunkIndex, chunk);
+            } else {
+                chunkIndex = chunks.size();
+                chunks.add(chunk);
+                if (chunks.size() > chunkLiveBytes.length) {
+                    chunkLiveBytes = Arrays.copyOf(chunkLiveBytes, chunkLiveBytes.length * 2);
+                }
+            }
+            offHeapBytes += chunk.capacity();
+            // all bodies of the previous chunk may be released while it was filled
+            if (previous >= 0 && chunkLiveBytes[previous] == 0) {
+                freeChunk(previous);
+            }
+        }
+
+        var position = chunk.position();
+        chunk.put(body, 0, length);
+        chunkLiveBytes[chunkIndex] += length;
+        storedBytes += length;
+        return ((long) chunkIndex << 32) | position;
+    }
+
+    // moves the bodies left in the chunk to the current one, the entries keep their ids
+    private void compact(int compacted) {
+        var buffer = new byte[0];
+        for (int id = 0; id < bodyCount; id++) {
+            if (refCounts[id] == 0 || (int) (refs[id] >>> 32) != compacted) {
+                continue;
+            }
+            var length = lengths[id];
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            copy(id, buffer, 0, 0, length);
+            chunkLiveBytes[compacted] -= length;
+            storedBytes -= length;
+            refs[id] = store(buffer, length);
+        }
+    }
+
+    private void freeChunk(int released) {
+        offHeapBytes -= chunks.get(released).capacity();
+        chunks.set(released, null);
+        if (freeChunkCount == freeChunkIndices.length) {
+            freeChunkIndices = Arrays.copyOf(freeChunkIndices, freeChunkIndices.length * 2);
+        }
+        freeChunkIndices[freeChunkCount++] = released;
+    }
+
+    private boolean contentEquals(int id, byte[] body, int length) {
+        if (lengths[id] != length) {
+            return false;
+        }
+
+        var ref = refs[id];
+        var stored = chunks.get((int) (ref >>> 32));
+        var position = (int) ref;
+        for (int i = 0; i < length; i++) {
+            if (stored.get(position + i) != body[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int newId() {
+        if (freeIdCount > 0) {
+            return freeIds[--freeIdCount];
+        }
+
+        if (bodyCount == refs.length) {
+            var capacity = refs.length * 2;
+            refs = Arrays.copyOf(refs, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            sidPositions = Arrays.copyOf(sidPositions, capacity);
+            msgIdPositions = Arrays.copyOf(msgIdPositions, capacity);
+            refCounts = Arrays.copyOf(refCounts, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        return bodyCount++;
+    }
+
+    private void removeFromIndex(int id) {
+        var mask = index.length - 1;
+        var slot = (int) hashes[id] & mask;
+        while (index[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+
+        // backward shift deletion, no tombstones
+        var next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (index[next] == EMPTY) {
+                break;
+            }
+            var home = (int) hashes[index[next]] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                index[slot] = index[next];
+                slot = next;
+            }
+        }
+        index[slot] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        var oldIndex = index;
+        index = newIndex(capacity);
+        var mask = capacity - 1;
+        for (int id : oldIndex) {
+            if (id != EMPTY) {
+                var slot = (int) hashes[id] & mask;
+                while (index[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = id;
+            }
+        }
+    }
+
+    private static int[] newIndex(int capacity) {
+        var newIndex = new int[capacity];
+        Arrays.fill(newIndex, EMPTY);
+        return newIndex;
+    }
+
+    // FNV-1a, mixed with the positions of the cut out header values
+    private static long hash(byte[] body, int length, int sidPosition, int msgIdPosition) {
+        var hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= body[i];
+            hash *= FNV_PRIME;
+        }
+        hash ^= ((long) sidPosition << 32) ^ msgIdPosition;
+        hash *= FNV_PRIME;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,192 @@
+package net.bruestel.homeconnect.haproxy.service.mdns;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.mdns.model.ApplianceRegistryUpdate;
+import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The discovered appliances, keyed by appliance id. mDNS reports an appliance once per interface and address, the
+ * reports are merged into one entry here. Changes are collected and handed to the consumer in batches, at most one
+ * batch per debounce interval, so a resolve storm of a large fleet does not flood the UI thread.
+ */
+@Slf4j
+public class ApplianceRegistry implements HomeApplianceListener {
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(100);
+
+    private final Consumer<ApplianceRegistryUpdate> consumer;
+    private final long debounceMillis;
+    private final Map<String, HomeAppliance> homeAppliances = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "appliance-registry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private Map<String, HomeAppliance> pendingUpdates = new LinkedHashMap<>();
+    private Map<String, HomeAppliance> pendingRemovals = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public ApplianceRegistry(Consumer<ApplianceRegistryUpdate> consumer) {
+        this(consumer, DEFAULT_DEBOUNCE);
+    }
+
+    public ApplianceRegistry(Consumer<ApplianceRegistryUpdate> consumer, Duration debounce) {
+        this.consumer = consumer;
+        this.debounceMillis = debounce.toMillis();
+    }
+
+    @Override
+    public void onNewOrUpdatedHomeAppliance(HomeAppliance homeAppliance) {
+        if (StringUtils.isEmpty(homeAppliance.getId())) {
+            return;
+        }
+
+        var previous = homeAppliances.get(homeAppliance.getId());
+        var merged = homeAppliances.merge(homeAppliance.getId(), homeAppliance, ApplianceRegistry::merge);
+        if (merged != previous) {
+            publishUpdate(merged);
+        }
+    }
+
+    @Override
+    public void onLostHomeAppliance(HomeAppliance homeAppliance) {
+        if (homeAppliance.getId() == null) {
+            return;
+        }
+
+        var removed = homeAppliances.remove(homeAppliance.getId());
+        if (removed != null) {
+            synchronized (lock) {
+                pendingUpdates.remove(removed.getId());
+                pendingRemovals.put(removed.getId(), removed);
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Adds appliances known from elsewhere (e.g. the discovery cache), appliances already found by mDNS are kept.
+     */
+    public void putAll(Collection<HomeAppliance> knownHomeAppliances) {
+        knownHomeAppliances.forEach(this::onNewOrUpdatedHomeAppliance);
+    }
+
+    public Optional<HomeAppliance> get(String id) {
+        return Optional.ofNullable(homeAppliances.get(id));
+    }
+
+    public List<HomeAppliance> getHomeAppliances() {
+        return List.copyOf(homeAppliances.values());
+    }
+
+    public int size() {
+        return homeAppliances.size();
+    }
+
+    /**
+     * Forgets all appliances, changes not handed to the consumer yet are discarded.
+     */
+    public void clear() {
+        synchronized (lock) {
+            homeAppliances.clear();
+            pendingUpdates = new LinkedHashMap<>();
+            pendingRemovals = new LinkedHashMap<>();
+        }
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void publishUpdate(HomeAppliance homeAppliance) {
+        synchronized (lock) {
+            // a concurrent update may have replaced the entry in the meantime, the latest one is published
+            var latest = homeAppliances.get(homeAppliance.getId());
+            if (latest == null) {
+                return;
+            }
+            pendingRemovals.remove(latest.getId());
+            pendingUpdates.put(latest.getId(), latest);
+            scheduleFlush();
+        }
+    }
+
+    // called with the lock held
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+
+        flushScheduled = true;
+        scheduler.schedule(this::flush, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        ApplianceRegistryUpdate update;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pendingUpdates.isEmpty() && pendingRemovals.isEmpty()) {
+                return;
+            }
+            update = new ApplianceRegistryUpdate(List.copyOf(pendingUpdates.values()),
+                    List.copyOf(pendingRemovals.values()));
+            pendingUpdates = new LinkedHashMap<>();
+            pendingRemovals = new LinkedHashMap<>();
+        }
+
+        log.atDebug().log("Publishing {} updated and {} removed appliance(s)",
+                update.getUpdated().size(), update.getRemoved().size());
+        try {
+            consumer.accept(update);
+        } catch (RuntimeException e) {
+            log.atError().log("Error publishing appliance registry update: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the existing entry if the report adds nothing new to it
+     */
+    private static HomeAppliance merge(HomeAppliance existing, HomeAppliance reported) {
+        if (existing.isCached() != reported.isCached()) {
+            // mDNS revalidates a cached entry, the cache never overrides mDNS
+            return existing.isCached() ? reported : existing;
+        }
+
+        var addressSet = new LinkedHashSet<InetAddress>(existing.getAddressSet());
+        var newAddresses = addressSet.addAll(reported.getAddressSet());
+        if (!newAddresses
+                && existing.getPort() == reported.getPort()
+                && existing.getConnectionType() == reported.getConnectionType()
+                && Objects.equals(existing.getBrand(), reported.getBrand())
+                && Objects.equals(existing.getType(), reported.getType())
+                && Objects.equals(existing.getVib(), reported.getVib())
+                && Arrays.equals(existing.getText(), reported.getText())) {
+            return existing;
+        }
+
+        return reported.toBuilder()
+                .addressSet(Collections.unmodifiableSet(addressSet))
+                .build();
+    }
+}
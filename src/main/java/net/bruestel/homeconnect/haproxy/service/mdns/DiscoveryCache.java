@@ -0,0 +1,203 @@
+package net.bruestel.homeconnect.haproxy.service.mdns;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.mdns.model.DiscoveryCacheEntry;
+import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Remembers the appliances found by mDNS between launches, so they can be listed and proxied before mDNS found them
+ * again. Entries not seen within the time to live are forgotten.
+ */
+@Slf4j
+public class DiscoveryCache {
+    public static final String FILE_PROPERTY = "haproxy.discoveryCache";
+    public static final String TTL_PROPERTY = "haproxy.discoveryCacheTtlHours";
+    private static final String DEFAULT_FILE = "discovery-cache.json";
+    private static final long DEFAULT_TTL_HOURS = 7 * 24;
+    // an unchanged entry is written again after this time only
+    private static final Duration LAST_SEEN_RESOLUTION = Duration.ofHours(1);
+
+    private final Path path;
+    private final Duration ttl;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "discovery-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, DiscoveryCacheEntry> entries = new LinkedHashMap<>();
+    // appliances found by mDNS since the start, their addresses replace the cached ones
+    private final Set<String> revalidated = new HashSet<>();
+
+    /**
+     * @param path cache file, {@code null} disables the cache
+     */
+    public DiscoveryCache(Path path, Duration ttl) {
+        this.path = path;
+        this.ttl = ttl;
+        read();
+    }
+
+    /**
+     * Opens the cache file given by the system property {@value #FILE_PROPERTY} or {@value #DEFAULT_FILE} in the
+     * working directory. An empty property disables the cache.
+     */
+    public static DiscoveryCache load() {
+        var file = System.getProperty(FILE_PROPERTY, DEFAULT_FILE);
+        var ttl = Duration.ofHours(Long.getLong(TTL_PROPERTY, DEFAULT_TTL_HOURS));
+        return new DiscoveryCache(StringUtils.isBlank(file) ? null : Path.of(file), ttl);
+    }
+
+    /**
+     * @return the cached appliances, those not found by mDNS in this run yet are flagged as cached
+     */
+    @Synchronized
+    public List<HomeAppliance> getHomeAppliances() {
+        var homeAppliances = new ArrayList<HomeAppliance>();
+        for (DiscoveryCacheEntry entry : entries.values()) {
+            homeAppliances.add(toHomeAppliance(entry, !revalidated.contains(entry.getId())));
+        }
+        return homeAppliances;
+    }
+
+    @Synchronized
+    public void put(HomeAppliance homeAppliance) {
+        if (StringUtils.isEmpty(homeAppliance.getId())) {
+            return;
+        }
+
+        var addresses = new LinkedHashSet<String>();
+        var previous = entries.get(homeAppliance.getId());
+        var firstReport = revalidated.add(homeAppliance.getId());
+        // the first report replaces the cached addresses, mDNS reports per interface add up from then on
+        if (previous != null && !firstReport) {
+            addresses.addAll(previous.getAddresses());
+        }
+        homeAppliance.getAddressSet().forEach(address -> addresses.add(address.getHostAddress()));
+
+        var now = Instant.now();
+        var entry = DiscoveryCacheEntry.builder()
+                .id(homeAppliance.getId())
+                .brand(homeAppliance.getBrand())
+                .type(homeAppliance.getType())
+                .vib(homeAppliance.getVib())
+                .addresses(List.copyOf(addresses))
+                .port(homeAppliance.getPort())
+                .connectionType(homeAppliance.getConnectionType())
+                .text(homeAppliance.getText())
+                .lastSeen(now)
+                .build();
+        entries.put(entry.getId(), entry);
+
+        if (previous == null
+                || !sameContent(previous, entry)
+                || previous.getLastSeen().plus(LAST_SEEN_RESOLUTION).isBefore(now)) {
+            save();
+        }
+    }
+
+    @Synchronized
+    public void remove(HomeAppliance homeAppliance) {
+        if (entries.remove(homeAppliance.getId()) != null) {
+            revalidated.remove(homeAppliance.getId());
+            save();
+        }
+    }
+
+    private void read() {
+        if (path == null || !Files.isRegularFile(path)) {
+            return;
+        }
+
+        try {
+            List<DiscoveryCacheEntry> cachedEntries = objectMapper.readValue(path.toFile(), new TypeReference<>() {});
+            var oldest = Instant.now().minus(ttl);
+            cachedEntries.stream()
+                    .filter(entry -> entry.getId() != null && entry.getLastSeen() != null)
+                    .filter(entry -> entry.getLastSeen().isAfter(oldest))
+                    .forEach(entry -> entries.put(entry.getId(), entry));
+            log.atInfo().log("Loaded {} appliance(s) from discovery cache {}.", entries.size(), path.toAbsolutePath());
+        } catch (IOException e) {
+            log.atError().log("Error reading discovery cache {}: {}", path.toAbsolutePath(), e.getMessage());
+        }
+    }
+
+    // written in the background, the mDNS threads never wait for the disk
+    private void save() {
+        if (path == null) {
+            return;
+        }
+
+        var snapshot = List.copyOf(entries.values());
+        writer.execute(() -> {
+            try {
+                var temporaryFile = path.resolveSibling(path.getFileName() + ".tmp");
+                objectMapper.writeValue(temporaryFile.toFile(), snapshot);
+                Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.atError().log("Error writing discovery cache {}: {}", path.toAbsolutePath(), e.getMessage());
+            }
+        });
+    }
+
+    private static boolean sameContent(DiscoveryCacheEntry a, DiscoveryCacheEntry b) {
+        return a.toBuilder().lastSeen(null).build().equals(b.toBuilder().lastSeen(null).build());
+    }
+
+    private static HomeAppliance toHomeAppliance(DiscoveryCacheEntry entry, boolean cached) {
+        var addressSet = new HashSet<InetAddress>();
+        for (String address : Objects.requireNonNullElse(entry.getAddresses(), List.<String>of())) {
+            try {
+                // literal addresses, no name lookup
+                addressSet.add(InetAddress.getByName(address));
+            } catch (UnknownHostException e) {
+                log.atWarn().log("Ignoring invalid cached address {} of {}", address, entry.getId());
+            }
+        }
+
+        return HomeAppliance.builder()
+                .id(entry.getId())
+                .brand(entry.getBrand())
+                .type(entry.getType())
+                .vib(entry.getVib())
+                .addressSet(addressSet)
+                .port(entry.getPort())
+                .connectionType(entry.getConnectionType())
+                .text(entry.getText() != null ? Arrays.copyOf(entry.getText(), entry.getText().length) : null)
+                .cached(cached)
+                .build();
+    }
+}
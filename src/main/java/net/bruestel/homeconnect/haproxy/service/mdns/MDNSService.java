@@ -6,10 +6,12 @@ import lombok.extern.slf4j.Slf4j;
 
 import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
+import net.bruestel.homeconnect.haproxy.service.mdns.model.MDNSSettings;
 
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.time.Duration;
@@ -17,25 +19,46 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceInfo;
 import javax.jmdns.ServiceListener;
 
+/**
+ * Runs one JmDNS instance per external address. The instances are created and closed in parallel, in the background.
+ * Operations requested before the instances are ready are queued and run in order.
+ */
 @Slf4j
 public class MDNSService {
     private static final String HOMECONNECT_SERVICE_TYPE = "_homeconnect._tcp.local.";
-
-    private final List<JmDNS> jmdnsList;
+    // time for the goodbye packets of the unregistered services
+    private static final Duration UNREGISTER_DELAY = Duration.ofSeconds(2);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "mdns");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final ServiceListener serviceListener;
+    private final CompletableFuture<List<JmDNS>> jmdnsList;
+    // operations run one after another, once the JmDNS instances are ready
+    private CompletableFuture<Void> operations;
 
     public MDNSService() {
         this(null);
     }
 
     public MDNSService(HomeApplianceListener homeApplianceListener) {
-        jmdnsList = new ArrayList<>();
+        this(homeApplianceListener, MDNSSettings.fromSystemProperties());
+    }
+
+    public MDNSService(HomeApplianceListener homeApplianceListener, MDNSSettings settings) {
 
         serviceListener = new ServiceListener() {
 
@@ -57,35 +80,36 @@ public class MDNSService {
                 log.atDebug().log("Service resolved: {}", event);
                 var homeAppliance = map(event);
                 if (homeApplianceListener != null && StringUtils.isNoneEmpty(homeAppliance.getId())) {
-                    homeApplianceListener.onNewOrUpdatedHomeAppliance(map(event));
+                    homeApplianceListener.onNewOrUpdatedHomeAppliance(homeAppliance);
                 }
             }
         };
 
-        getAllExternalIPAddresses()
-                .forEach(address -> {
-                    try {
-                        jmdnsList.add(JmDNS.create(address));
-                        log.atInfo().log("JmDNS created for {}", address);
-                    } catch (IOException e) {
-                        log.atError().log("Error creating JmDNS for {}", address, e);
-                        throw new IllegalStateException(e);
-                    }
-                });
+        var creations = getAllExternalIPAddresses(settings).stream()
+                .map(address -> CompletableFuture.supplyAsync(() -> create(address), executor))
+                .toList();
+        jmdnsList = CompletableFuture.allOf(creations.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> creations.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .toList());
+        operations = jmdnsList.thenAccept(list -> log.atInfo().log("mDNS ready ({} instances)", list.size()));
     }
 
     public void startNetworkScan() {
         stopNetworkScan();
-        jmdnsList.forEach(jmDNS -> jmDNS.addServiceListener(HOMECONNECT_SERVICE_TYPE, serviceListener));
+        forEachJmDNS(jmDNS -> jmDNS.addServiceListener(HOMECONNECT_SERVICE_TYPE, serviceListener));
     }
 
     public void stopNetworkScan() {
-        jmdnsList.forEach(jmDNS -> jmDNS.removeServiceListener(HOMECONNECT_SERVICE_TYPE, serviceListener));
+        forEachJmDNS(jmDNS -> jmDNS.removeServiceListener(HOMECONNECT_SERVICE_TYPE, serviceListener));
     }
 
-    @SneakyThrows
-    public void registerProxyService(HomeAppliance homeAppliance, int proxyPort) {
-        jmdnsList.forEach(jmDNS -> {
+    /**
+     * @return completes once the service is registered on all instances, exceptionally if one registration failed
+     */
+    public CompletableFuture<Void> registerProxyService(HomeAppliance homeAppliance, int proxyPort) {
+        return forEachJmDNS(jmDNS -> {
             try {
                 log.atInfo().log("Registering mDNS Service");
                 var serviceInfo = ServiceInfo.create(
@@ -103,33 +127,77 @@ public class MDNSService {
                 jmDNS.registerService(serviceInfo);
                 log.atInfo().log("Registered mDNS Service: {}", serviceInfo.getName());
             } catch (IOException e) {
-                log.atError().log("Error registering mDNS Service", e);
-                throw new IllegalStateException(e);
+                throw new UncheckedIOException("Error registering mDNS Service", e);
             }
         });
     }
 
     public void unregisterAllProxyServices() {
-        jmdnsList.forEach(JmDNS::unregisterAllServices);
+        forEachJmDNS(JmDNS::unregisterAllServices);
     }
 
+    /**
+     * Closes all JmDNS instances in parallel and waits for it.
+     */
     public void close() {
         log.atInfo().log("Stopping mDNS");
-        jmdnsList.forEach(jmDNS -> {
-            jmDNS.unregisterAllServices();
-            try {
-                Thread.sleep(Duration.ofSeconds(2));
-            } catch (InterruptedException ignored) {}
-            try {
-                jmDNS.close();
-            } catch (IOException e) {
-                log.atError().log("Error closing JmDNS", e);
-            }
+        CompletableFuture<Void> closed;
+        synchronized (this) {
+            closed = operations.thenCompose(ignored -> jmdnsList)
+                    .thenCompose(list -> CompletableFuture.allOf(list.stream()
+                            .map(jmDNS -> CompletableFuture.runAsync(() -> close(jmDNS), executor))
+                            .toArray(CompletableFuture[]::new)));
+            operations = closed;
+        }
+        try {
+            closed.join();
+        } catch (RuntimeException e) {
+            log.atError().log("Error closing mDNS", e);
+        }
+        executor.shutdown();
+    }
+
+    // queued behind the previous operations, so a stop never overtakes a start, a failed operation does not stop
+    // the ones behind it
+    private synchronized CompletableFuture<Void> forEachJmDNS(Consumer<JmDNS> action) {
+        var operation = operations
+                .thenCompose(ignored -> jmdnsList)
+                .thenAccept(list -> list.forEach(action));
+        operations = operation.exceptionally(e -> {
+            log.atError().log("mDNS operation failed", e);
+            return null;
         });
+        return operation;
+    }
+
+    private static JmDNS create(InetAddress address) {
+        try {
+            var jmDNS = JmDNS.create(address);
+            log.atInfo().log("JmDNS created for {}", address);
+            return jmDNS;
+        } catch (IOException e) {
+            // the other addresses are still usable
+            log.atError().log("Error creating JmDNS for {}", address, e);
+            return null;
+        }
+    }
+
+    private static void close(JmDNS jmDNS) {
+        jmDNS.unregisterAllServices();
+        try {
+            Thread.sleep(UNREGISTER_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            jmDNS.close();
+        } catch (IOException e) {
+            log.atError().log("Error closing JmDNS", e);
+        }
     }
 
     @SneakyThrows
-    protected static List<InetAddress> getAllExternalIPAddresses() {
+    protected static List<InetAddress> getAllExternalIPAddresses(MDNSSettings settings) {
         List<InetAddress> externalIps = new ArrayList<>();
 
         Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
@@ -138,6 +206,10 @@ public class MDNSService {
             NetworkInterface iface = interfaces.nextElement();
 
             if (!iface.isUp() || iface.isLoopback()) continue;
+            if (!settings.isIncluded(iface.getName())) {
+                log.atDebug().log("Skipping network interface {}", iface.getName());
+                continue;
+            }
 
             Enumeration<InetAddress> addresses = iface.getInetAddresses();
             while (addresses.hasMoreElements()) {
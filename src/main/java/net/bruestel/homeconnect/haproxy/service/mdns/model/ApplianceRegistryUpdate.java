@@ -0,0 +1,15 @@
+package net.bruestel.homeconnect.haproxy.service.mdns.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Changes of the appliance registry since the last update, each appliance is contained at most once.
+ */
+@Value
+public class ApplianceRegistryUpdate {
+    // new or changed appliances, with the merged address set
+    List<HomeAppliance> updated;
+    List<HomeAppliance> removed;
+}
@@ -0,0 +1,26 @@
+package net.bruestel.homeconnect.haproxy.service.mdns.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * {@link HomeAppliance} as stored in the discovery cache, the addresses are literal IPs.
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
+public class DiscoveryCacheEntry {
+    String id;
+    String brand;
+    String type;
+    String vib;
+    List<String> addresses;
+    int port;
+    ConnectionType connectionType;
+    byte[] text;
+    Instant lastSeen;
+}
@@ -9,7 +9,7 @@ import java.net.InetAddress;
 import java.util.Set;
 
 @Value
-@Builder
+@Builder(toBuilder = true)
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class HomeAppliance {
     @EqualsAndHashCode.Include
@@ -22,4 +22,6 @@ public class HomeAppliance {
     ConnectionType connectionType;
     @ToString.Exclude
     byte[] text;
+    // from the discovery cache, not found by mDNS in this run yet
+    boolean cached;
 }
@@ -0,0 +1,50 @@
+package net.bruestel.homeconnect.haproxy.service.mdns.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+public class MDNSSettings {
+    public static final String INTERFACES_PROPERTY = "haproxy.mdns.interfaces";
+    public static final String EXCLUDED_INTERFACES_PROPERTY = "haproxy.mdns.excludedInterfaces";
+
+    private static final String WILDCARD = "*";
+
+    // names of the network interfaces to use, a trailing * matches by prefix, empty means all
+    @Builder.Default
+    List<String> interfaces = List.of();
+    // names of the network interfaces to skip, e.g. docker*
+    @Builder.Default
+    List<String> excludedInterfaces = List.of();
+
+    public static MDNSSettings fromSystemProperties() {
+        return MDNSSettings.builder()
+                .interfaces(parseNames(System.getProperty(INTERFACES_PROPERTY)))
+                .excludedInterfaces(parseNames(System.getProperty(EXCLUDED_INTERFACES_PROPERTY)))
+                .build();
+    }
+
+    public boolean isIncluded(String interfaceName) {
+        return (interfaces.isEmpty() || matchesAny(interfaces, interfaceName))
+                && !matchesAny(excludedInterfaces, interfaceName);
+    }
+
+    private static boolean matchesAny(List<String> patterns, String interfaceName) {
+        return patterns.stream().anyMatch(pattern -> pattern.endsWith(WILDCARD)
+                ? interfaceName.startsWith(StringUtils.removeEnd(pattern, WILDCARD))
+                : interfaceName.equals(pattern));
+    }
+
+    private static List<String> parseNames(String value) {
+        return Arrays.stream(StringUtils.split(StringUtils.defaultString(value), ','))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .toList();
+    }
+}
@@ -0,0 +1,164 @@
+package net.bruestel.homeconnect.haproxy.service.message;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoder for Home Connect messages. Header fields are read directly from the UTF-8 payload, data items
+ * only record offsets into it. Neither a JSON tree nor intermediate maps are built.
+ */
+public class MessageDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int RESOURCE_TABLE_SIZE = 256;
+
+    private static final String SID = "sID";
+    private static final String MSG_ID = "msgID";
+    private static final String RESOURCE = "resource";
+    private static final String VERSION = "version";
+    private static final String ACTION = "action";
+    private static final String CODE = "code";
+    private static final String DATA = "data";
+    private static final String UID = "uid";
+    private static final String VALUE = "value";
+
+    // resources repeat all the time, so they are canonicalized instead of creating a new string per message
+    private final String[] resourceTable = new String[RESOURCE_TABLE_SIZE];
+
+    public Message decode(byte[] payload) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Message is not a JSON object");
+            }
+
+            var builder = Message.builder()
+                    .payload(payload)
+                    .action(Action.UNKNOWN)
+                    .data(List.of());
+
+            String fieldName;
+            while ((fieldName = parser.nextFieldName()) != null) {
+                var token = parser.nextToken();
+                switch (fieldName) {
+                    case SID -> builder.sid(parser.getValueAsLong())
+                            .sidOffset(tokenOffset(parser))
+                            .sidLength(tokenLength(parser));
+                    case MSG_ID -> builder.msgId(parser.getValueAsLong())
+                            .msgIdOffset(tokenOffset(parser))
+                            .msgIdLength(tokenLength(parser));
+                    case RESOURCE -> builder.resource(token == JsonToken.VALUE_STRING ? resource(parser) : null);
+                    case VERSION -> builder.version(parser.getValueAsInt());
+                    case ACTION -> builder.action(token == JsonToken.VALUE_STRING
+                            ? Action.of(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())
+                            : Action.UNKNOWN);
+                    case CODE -> builder.code(parser.getValueAsInt());
+                    case DATA -> builder.data(decodeData(parser, payload));
+                    default -> parser.skipChildren();
+                }
+            }
+
+            return builder.build();
+        }
+    }
+
+    private List<DataItem> decodeData(JsonParser parser, byte[] payload) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+
+        var items = new ArrayList<DataItem>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            var offset = (int) parser.currentTokenLocation().getByteOffset();
+            var uid = DataItem.NO_UID;
+            var valueOffset = 0;
+            var valueLength = 0;
+
+            if (token == JsonToken.START_OBJECT) {
+                String fieldName;
+                while ((fieldName = parser.nextFieldName()) != null) {
+                    var valueToken = parser.nextToken();
+                    if (UID.equals(fieldName) && valueToken == JsonToken.VALUE_NUMBER_INT) {
+                        uid = parser.getIntValue();
+                    } else if (VALUE.equals(fieldName)) {
+                        valueOffset = (int) parser.currentTokenLocation().getByteOffset();
+                        valueLength = (int) (skipValue(parser) - valueOffset);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                skipValue(parser);
+            }
+
+            var length = (int) (parser.currentLocation().getByteOffset() - offset);
+            items.add(new DataItem(payload, offset, length, uid, valueOffset, valueLength));
+        }
+        return items;
+    }
+
+    private static int tokenOffset(JsonParser parser) {
+        return (int) parser.currentTokenLocation().getByteOffset();
+    }
+
+    private static int tokenLength(JsonParser parser) throws IOException {
+        parser.finishToken();
+        return (int) (parser.currentLocation().getByteOffset() - parser.currentTokenLocation().getByteOffset());
+    }
+
+    /**
+     * Skips the current value and returns the byte offset directly behind it.
+     */
+    private long skipValue(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+        } else {
+            parser.finishToken();
+        }
+        return parser.currentLocation().getByteOffset();
+    }
+
+    private String resource(JsonParser parser) throws IOException {
+        var chars = parser.getTextCharacters();
+        var offset = parser.getTextOffset();
+        var length = parser.getTextLength();
+
+        var hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        var slot = hash & (RESOURCE_TABLE_SIZE - 1);
+
+        var cached = resourceTable[slot];
+        if (cached != null && equals(cached, chars, offset, length)) {
+            return cached;
+        }
+
+        var resource = new String(chars, offset, length);
+        resourceTable[slot] = resource;
+        return resource;
+    }
+
+    private static boolean equals(String value, char[] chars, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
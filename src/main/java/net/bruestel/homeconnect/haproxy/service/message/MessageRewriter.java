@@ -0,0 +1,82 @@
+package net.bruestel.homeconnect.haproxy.service.message;
+
+import lombok.RequiredArgsConstructor;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.message.model.PayloadEdit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rewrites messages by splicing new values into the payload at the offsets recorded by the {@link MessageDecoder}.
+ */
+@RequiredArgsConstructor
+public class MessageRewriter {
+
+    private final MessageDecoder messageDecoder;
+
+    /**
+     * Returns the message with the given sID and msgID. The message itself is returned if nothing changes.
+     */
+    public Message withHeader(Message message, long sid, long msgId) {
+        var edits = new ArrayList<PayloadEdit>(2);
+        if (sid != message.getSid() && message.getSidLength() > 0) {
+            edits.add(new PayloadEdit(message.getSidOffset(), message.getSidLength(), number(sid)));
+        }
+        if (msgId != message.getMsgId() && message.getMsgIdLength() > 0) {
+            edits.add(new PayloadEdit(message.getMsgIdOffset(), message.getMsgIdLength(), number(msgId)));
+        }
+        if (edits.isEmpty()) {
+            return message;
+        }
+
+        try {
+            return messageDecoder.decode(splice(message.getPayload(), edits)).toBuilder()
+                    .tags(message.getTags())
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Rewritten message is invalid", e);
+        }
+    }
+
+    /**
+     * Applies the edits in a single copy. Overlapping edits are skipped, the first one wins.
+     */
+    public static byte[] splice(byte[] payload, List<PayloadEdit> edits) {
+        edits.sort(Comparator.comparingInt(PayloadEdit::getOffset));
+
+        var length = payload.length;
+        var end = 0;
+        for (var edit : edits) {
+            if (edit.getOffset() >= end) {
+                length += edit.getValue().length - edit.getLength();
+                end = edit.getOffset() + edit.getLength();
+            }
+        }
+
+        var result = new byte[length];
+        var readPosition = 0;
+        var writePosition = 0;
+        for (var edit : edits) {
+            if (edit.getOffset() < readPosition) {
+                continue;
+            }
+            var unchanged = edit.getOffset() - readPosition;
+            System.arraycopy(payload, readPosition, result, writePosition, unchanged);
+            writePosition += unchanged;
+            System.arraycopy(edit.getValue(), 0, result, writePosition, edit.getValue().length);
+            writePosition += edit.getValue().length;
+            readPosition = edit.getOffset() + edit.getLength();
+        }
+        System.arraycopy(payload, readPosition, result, writePosition, payload.length - readPosition);
+        return result;
+    }
+
+    private static byte[] number(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,31 @@
+package net.bruestel.homeconnect.haproxy.service.message.model;
+
+public enum Action {
+    GET,
+    POST,
+    RESPONSE,
+    NOTIFY,
+    UNKNOWN;
+
+    private static final Action[] VALUES = values();
+
+    /**
+     * Resolves the action from the parser's character buffer without creating a string.
+     */
+    public static Action of(char[] chars, int offset, int length) {
+        for (Action action : VALUES) {
+            var name = action.name();
+            if (name.length() != length) {
+                continue;
+            }
+            var match = true;
+            for (int i = 0; i < length && match; i++) {
+                match = name.charAt(i) == chars[offset + i];
+            }
+            if (match) {
+                return action;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,112 @@
+package net.bruestel.homeconnect.haproxy.service.message.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One element of the {@code data} array of a message. The item does not copy anything, it only points into the
+ * payload of its message.
+ */
+@Value
+public class DataItem {
+    public static final int NO_UID = -1;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Getter(AccessLevel.NONE)
+    byte[] payload;
+    int offset;
+    int length;
+    int uid;
+    int valueOffset;
+    int valueLength;
+
+    public boolean hasUid() {
+        return uid != NO_UID;
+    }
+
+    public boolean hasValue() {
+        return valueLength > 0;
+    }
+
+    /**
+     * @return {@code true} if the {@code value} field is a JSON integer within the int range
+     */
+    public boolean hasIntValue() {
+        if (!hasValue() || valueLength > 11) {
+            return false;
+        }
+
+        var start = payload[valueOffset] == '-' ? valueOffset + 1 : valueOffset;
+        var end = valueOffset + valueLength;
+        if (start == end) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            if (payload[i] < '0' || payload[i] > '9') {
+                return false;
+            }
+            value = value * 10 + (payload[i] - '0');
+        }
+        return start == valueOffset ? value <= Integer.MAX_VALUE : -value >= Integer.MIN_VALUE;
+    }
+
+    /**
+     * Reads an integer {@code value} field from the payload without materializing it, see {@link #hasIntValue()}.
+     */
+    public int getIntValue() {
+        var negative = payload[valueOffset] == '-';
+        var value = 0;
+        for (int i = negative ? valueOffset + 1 : valueOffset; i < valueOffset + valueLength; i++) {
+            value = value * 10 + (payload[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Raw JSON text of the {@code value} field (strings keep their quotes).
+     */
+    public String getRawValue() {
+        return hasValue() ? new String(payload, valueOffset, valueLength, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * {@code value} field materialized as plain Java object ({@code String}, {@code Number}, {@code Boolean},
+     * {@code Map}, {@code List}).
+     */
+    public Object getValue() {
+        if (!hasValue()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(payload, valueOffset, valueLength, Object.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid value of data item", e);
+        }
+    }
+
+    /**
+     * Compares the raw JSON of the {@code value} field without copying it.
+     */
+    public boolean valueEquals(byte[] rawValue) {
+        return rawValue != null && hasValue()
+                && Arrays.equals(payload, valueOffset, valueOffset + valueLength, rawValue, 0, rawValue.length);
+    }
+
+    public byte[] copyRawValue() {
+        return hasValue() ? Arrays.copyOfRange(payload, valueOffset, valueOffset + valueLength) : null;
+    }
+
+    @Override
+    public String toString() {
+        return new String(payload, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package net.bruestel.homeconnect.haproxy.service.message.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Decoded Home Connect message. Header fields are primitives, the payload is kept as UTF-8 bytes and is only
+ * turned into a JSON tree on demand.
+ */
+@Value
+@Builder(toBuilder = true)
+public class Message {
+    public static final int NO_CODE = 0;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    long sid;
+    long msgId;
+    // location of the header values inside the payload, used to rewrite them without parsing
+    int sidOffset;
+    int sidLength;
+    int msgIdOffset;
+    int msgIdLength;
+    String resource;
+    int version;
+    Action action;
+    int code;
+    List<DataItem> data;
+    byte[] payload;
+    @Builder.Default
+    List<String> tags = List.of();
+
+    public boolean hasCode() {
+        return code != NO_CODE;
+    }
+
+    public boolean isRequest() {
+        return action == Action.GET || action == Action.POST;
+    }
+
+    public String getPayloadAsString() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @JsonValue
+    public JsonNode toJsonNode() {
+        try {
+            return OBJECT_MAPPER.readTree(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid message payload", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getPayloadAsString();
+    }
+}
@@ -0,0 +1,13 @@
+package net.bruestel.homeconnect.haproxy.service.message.model;
+
+import lombok.Value;
+
+/**
+ * Replacement of {@code length} payload bytes at {@code offset} by {@code value}.
+ */
+@Value
+public class PayloadEdit {
+    int offset;
+    int length;
+    byte[] value;
+}
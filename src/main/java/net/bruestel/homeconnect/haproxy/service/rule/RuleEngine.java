@@ -0,0 +1,236 @@
+package net.bruestel.homeconnect.haproxy.service.rule;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.message.model.PayloadEdit;
+import net.bruestel.homeconnect.haproxy.service.rule.model.Rule;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleAction;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleResult;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleStatistics;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiles declarative {@link Rule}s into plain field comparisons. Rules with an exact resource are indexed by
+ * resource, so a message is only checked against the rules of its resource and the prefix/catch-all rules, in
+ * rule order and in a single pass.
+ */
+@Slf4j
+public class RuleEngine {
+    public static final String RULES_FILE_PROPERTY = "haproxy.rules";
+    private static final String DEFAULT_RULES_FILE = "rules.json";
+    private static final String WILDCARD = "*";
+    private static final CompiledRule[] NO_RULES = new CompiledRule[0];
+
+    private final CompiledRule[] rules;
+    private final Map<String, CompiledRule[]> exactResourceRules;
+    private final CompiledRule[] otherRules;
+
+    public RuleEngine(List<Rule> rules) {
+        var objectMapper = new ObjectMapper();
+        var exact = new HashMap<String, List<CompiledRule>>();
+        var other = new ArrayList<CompiledRule>();
+
+        this.rules = new CompiledRule[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            var compiledRule = new CompiledRule(i, rules.get(i), objectMapper);
+            this.rules[i] = compiledRule;
+            if (compiledRule.exactResource != null) {
+                exact.computeIfAbsent(compiledRule.exactResource, resource -> new ArrayList<>()).add(compiledRule);
+            } else {
+                other.add(compiledRule);
+            }
+        }
+
+        this.exactResourceRules = new HashMap<>();
+        exact.forEach((resource, list) -> exactResourceRules.put(resource, list.toArray(NO_RULES)));
+        this.otherRules = other.toArray(NO_RULES);
+    }
+
+    /**
+     * Loads the rules from the file given by the system property {@value #RULES_FILE_PROPERTY} or from
+     * {@value #DEFAULT_RULES_FILE} in the working directory. Without a rules file, no rule is applied.
+     */
+    public static RuleEngine load() {
+        var path = Path.of(System.getProperty(RULES_FILE_PROPERTY, DEFAULT_RULES_FILE));
+        if (!Files.isRegularFile(path)) {
+            return new RuleEngine(List.of());
+        }
+
+        try {
+            List<Rule> rules = new ObjectMapper().readValue(path.toFile(), new TypeReference<>() {});
+            log.atInfo().log("Loaded {} rule(s) from {}.", rules.size(), path.toAbsolutePath());
+            return new RuleEngine(rules);
+        } catch (IOException | IllegalArgumentException e) {
+            log.atError().log("Error loading rules from {}: {}", path.toAbsolutePath(), e.getMessage(), e);
+            return new RuleEngine(List.of());
+        }
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    public RuleResult evaluate(Message message, Sender sender) {
+        if (rules.length == 0) {
+            return RuleResult.PASS;
+        }
+
+        var resourceRules = message.getResource() != null
+                ? exactResourceRules.getOrDefault(message.getResource(), NO_RULES)
+                : NO_RULES;
+
+        var drop = false;
+        var delayMillis = 0L;
+        List<String> tags = null;
+        List<PayloadEdit> edits = null;
+
+        // merge both candidate lists by rule index to keep the declaration order
+        int i = 0;
+        int j = 0;
+        while (i < resourceRules.length || j < otherRules.length) {
+            CompiledRule rule;
+            if (j >= otherRules.length || (i < resourceRules.length && resourceRules[i].index < otherRules[j].index)) {
+                rule = resourceRules[i++];
+            } else {
+                rule = otherRules[j++];
+            }
+
+            if (!rule.matches(message, sender)) {
+                continue;
+            }
+            rule.hits.increment();
+
+            switch (rule.action) {
+                case DROP -> drop = true;
+                case DELAY -> delayMillis = Math.max(delayMillis, rule.delayMillis);
+                case TAG -> {
+                    if (tags == null) {
+                        tags = new ArrayList<>(2);
+                    }
+                    tags.add(rule.tag);
+                }
+                case REWRITE -> {
+                    for (DataItem dataItem : message.getData()) {
+                        if (dataItem.getUid() == rule.uid && dataItem.hasValue()) {
+                            if (edits == null) {
+                                edits = new ArrayList<>(2);
+                            }
+                            edits.add(new PayloadEdit(dataItem.getValueOffset(), dataItem.getValueLength(), rule.value));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!drop && delayMillis == 0 && tags == null && edits == null) {
+            return RuleResult.PASS;
+        }
+        return new RuleResult(drop,
+                delayMillis,
+                edits != null ? MessageRewriter.splice(message.getPayload(), edits) : null,
+                tags != null ? tags : List.of());
+    }
+
+    public List<RuleStatistics> getStatistics() {
+        return Arrays.stream(rules)
+                .map(rule -> new RuleStatistics(rule.name, rule.action, rule.hits.sum()))
+                .toList();
+    }
+
+    private static final class CompiledRule {
+        private final int index;
+        private final String name;
+        private final Sender sender;
+        private final Action messageAction;
+        private final String exactResource;
+        private final String resourcePrefix;
+        private final int uid;
+        private final RuleAction action;
+        private final long delayMillis;
+        private final byte[] value;
+        private final String tag;
+        private final LongAdder hits = new LongAdder();
+
+        private CompiledRule(int index, Rule rule, ObjectMapper objectMapper) {
+            if (rule.getThen() == null) {
+                throw new IllegalArgumentException("Rule without action: " + rule);
+            }
+
+            this.index = index;
+            this.name = rule.getName() != null ? rule.getName() : "rule-" + index;
+            this.sender = rule.getSender();
+            this.messageAction = rule.getAction();
+            this.uid = rule.getUid() != null ? rule.getUid() : DataItem.NO_UID;
+            this.action = rule.getThen();
+            this.delayMillis = rule.getDelayMillis();
+            this.tag = rule.getTag() != null ? rule.getTag() : name;
+
+            var resource = rule.getResource();
+            if (resource == null || WILDCARD.equals(resource)) {
+                exactResource = null;
+                resourcePrefix = null;
+            } else if (resource.endsWith(WILDCARD)) {
+                exactResource = null;
+                resourcePrefix = resource.substring(0, resource.length() - 1);
+            } else {
+                exactResource = resource;
+                resourcePrefix = null;
+            }
+
+            if (action == RuleAction.DELAY && delayMillis <= 0) {
+                throw new IllegalArgumentException("Delay rule requires a positive delayMillis: " + name);
+            }
+            if (action == RuleAction.REWRITE) {
+                if (rule.getUid() == null || rule.getValue() == null) {
+                    throw new IllegalArgumentException("Rewrite rule requires uid and value: " + name);
+                }
+                try {
+                    this.value = objectMapper.writeValueAsBytes(rule.getValue());
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Invalid value of rule " + name, e);
+                }
+            } else {
+                this.value = null;
+            }
+        }
+
+        private boolean matches(Message message, Sender messageSender) {
+            if (sender != null && sender != messageSender) {
+                return false;
+            }
+            if (messageAction != null && messageAction != message.getAction()) {
+                return false;
+            }
+            if (resourcePrefix != null
+                    && (message.getResource() == null || !message.getResource().startsWith(resourcePrefix))) {
+                return false;
+            }
+            if (uid != DataItem.NO_UID) {
+                for (DataItem dataItem : message.getData()) {
+                    if (dataItem.getUid() == uid) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.bruestel.homeconnect.haproxy.service.rule.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+/**
+ * Declarative rule. All match fields are optional, {@code resource} matches exactly or, with a trailing
+ * {@code *}, by prefix.
+ */
+@Value
+@Builder
+@Jacksonized
+public class Rule {
+    String name;
+
+    // match
+    Sender sender;
+    Action action;
+    String resource;
+    Integer uid;
+
+    // action
+    RuleAction then;
+    long delayMillis;
+    JsonNode value;
+    String tag;
+}
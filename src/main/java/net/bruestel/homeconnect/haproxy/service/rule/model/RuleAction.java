@@ -0,0 +1,8 @@
+package net.bruestel.homeconnect.haproxy.service.rule.model;
+
+public enum RuleAction {
+    DROP,
+    DELAY,
+    REWRITE,
+    TAG
+}
@@ -0,0 +1,20 @@
+package net.bruestel.homeconnect.haproxy.service.rule.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class RuleResult {
+    public static final RuleResult PASS = new RuleResult(false, 0, null, List.of());
+
+    boolean drop;
+    long delayMillis;
+    // rewritten payload, null if unchanged
+    byte[] payload;
+    List<String> tags;
+
+    public boolean isModified() {
+        return drop || payload != null;
+    }
+}
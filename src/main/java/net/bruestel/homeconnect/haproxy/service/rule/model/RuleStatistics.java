@@ -0,0 +1,10 @@
+package net.bruestel.homeconnect.haproxy.service.rule.model;
+
+import lombok.Value;
+
+@Value
+public class RuleStatistics {
+    String name;
+    RuleAction action;
+    long hits;
+}
@@ -0,0 +1,133 @@
+package net.bruestel.homeconnect.haproxy.service.state;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.state.model.StateChange;
+import net.bruestel.homeconnect.haproxy.service.state.model.StateEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Latest value and timestamp of every uid per appliance, maintained from the RESPONSE and NOTIFY messages of the
+ * appliance. Unchanged values are detected on the raw bytes and only refresh the timestamp.
+ */
+@Slf4j
+public class ApplianceStateStore {
+    private static final Set<String> VALUE_RESOURCES = Set.of("/ro/values", "/ro/allMandatoryValues", "/ro/allValues");
+
+    private final Map<String, UidValueTable> tables = new ConcurrentHashMap<>();
+    private final List<Consumer<StateChange>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void update(String applianceId, Message message) {
+        if ((message.getAction() != Action.RESPONSE && message.getAction() != Action.NOTIFY)
+                || !VALUE_RESOURCES.contains(message.getResource())) {
+            return;
+        }
+
+        var timestamp = System.currentTimeMillis();
+        var table = tables.computeIfAbsent(applianceId, id -> new UidValueTable());
+        List<StateChange> changes = null;
+
+        synchronized (table) {
+            for (DataItem dataItem : message.getData()) {
+                if (!dataItem.hasUid() || !dataItem.hasValue()) {
+                    continue;
+                }
+
+                var slot = table.indexOf(dataItem.getUid());
+                if (slot >= 0 && dataItem.valueEquals(table.valueAt(slot))) {
+                    table.touch(slot, timestamp);
+                    continue;
+                }
+
+                var previousValue = slot >= 0 ? table.valueAt(slot) : null;
+                var value = dataItem.copyRawValue();
+                table.put(dataItem.getUid(), value, timestamp);
+
+                if (!subscribers.isEmpty()) {
+                    if (changes == null) {
+                        changes = new ArrayList<>();
+                    }
+                    changes.add(new StateChange(applianceId, dataItem.getUid(), text(value), text(previousValue),
+                            timestamp));
+                }
+            }
+        }
+
+        if (changes != null) {
+            changes.forEach(this::publish);
+        }
+    }
+
+    public Set<String> getApplianceIds() {
+        return Set.copyOf(tables.keySet());
+    }
+
+    public List<StateEntry> getState(String applianceId) {
+        var table = tables.get(applianceId);
+        if (table == null) {
+            return List.of();
+        }
+
+        synchronized (table) {
+            var entries = new ArrayList<StateEntry>(table.size());
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.uidAt(slot) != DataItem.NO_UID) {
+                    entries.add(entry(table, slot));
+                }
+            }
+            return entries;
+        }
+    }
+
+    public Optional<StateEntry> getState(String applianceId, int uid) {
+        var table = tables.get(applianceId);
+        if (table == null) {
+            return Optional.empty();
+        }
+
+        synchronized (table) {
+            var slot = table.indexOf(uid);
+            return slot >= 0 ? Optional.of(entry(table, slot)) : Optional.empty();
+        }
+    }
+
+    /**
+     * Subscribes to value changes.
+     *
+     * @return handle to unsubscribe
+     */
+    public Runnable subscribe(Consumer<StateChange> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    private void publish(StateChange change) {
+        for (Consumer<StateChange> subscriber : subscribers) {
+            try {
+                subscriber.accept(change);
+            } catch (RuntimeException e) {
+                log.atError().log("Error publishing state change", e);
+            }
+        }
+    }
+
+    private static StateEntry entry(UidValueTable table, int slot) {
+        return new StateEntry(table.uidAt(slot), text(table.valueAt(slot)), table.timestampAt(slot));
+    }
+
+    private static String text(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+}
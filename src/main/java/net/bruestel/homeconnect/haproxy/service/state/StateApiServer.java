@@ -0,0 +1,158 @@
+package net.bruestel.homeconnect.haproxy.service.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketOpen;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.server.WebSocketUpgradeHandler;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Local HTTP API on the loopback interface to query the {@link ApplianceStateStore}:
+ * <ul>
+ *     <li>{@code GET /api/appliances}: ids of the known appliances</li>
+ *     <li>{@code GET /api/appliances/{id}/state}: latest value of every uid</li>
+ *     <li>{@code GET /api/appliances/{id}/state/{uid}}: latest value of one uid</li>
+ *     <li>WebSocket {@code /api/deltas[?appliance={id}]}: value changes as they happen</li>
+ * </ul>
+ */
+@Slf4j
+public class StateApiServer {
+    private static final String APPLIANCES_PATH = "/api/appliances";
+    private static final String DELTAS_PATH = "/api/deltas";
+    private static final String STATE = "state";
+    private static final String APPLIANCE_PARAMETER = "appliance";
+    private static final String APPLICATION_JSON = "application/json";
+
+    private final ApplianceStateStore stateStore;
+    private final int port;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Server server;
+
+    public StateApiServer(ApplianceStateStore stateStore, int port) {
+        this.stateStore = stateStore;
+        this.port = port;
+    }
+
+    @Synchronized
+    public void start() throws Exception {
+        if (server != null) {
+            stop();
+        }
+        log.atInfo().log("Starting state API on port {}...", port);
+
+        server = new Server(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        var webSocketUpgradeHandler = WebSocketUpgradeHandler.from(server, container ->
+                container.addMapping(DELTAS_PATH, (upgradeRequest, upgradeResponse, callback) -> {
+                    var fields = Request.extractQueryParameters(upgradeRequest);
+                    return new DeltaEndpoint(fields.getValue(APPLIANCE_PARAMETER));
+                }));
+        webSocketUpgradeHandler.setHandler(new StateHandler());
+        server.setHandler(webSocketUpgradeHandler);
+        server.start();
+    }
+
+    @Synchronized
+    public void stop() {
+        if (server != null) {
+            log.atInfo().log("Stopping state API on port {}...", port);
+            try {
+                server.stop();
+            } catch (Exception e) {
+                log.atError().log("Error stopping state API", e);
+            }
+        }
+        server = null;
+    }
+
+    private class StateHandler extends Handler.Abstract.NonBlocking {
+        @Override
+        public boolean handle(Request request, Response response, Callback callback) throws JsonProcessingException {
+            if (!HttpMethod.GET.is(request.getMethod())) {
+                Response.writeError(request, response, callback, HttpStatus.METHOD_NOT_ALLOWED_405);
+                return true;
+            }
+
+            var body = route(Request.getPathInContext(request));
+            if (body == null) {
+                Response.writeError(request, response, callback, HttpStatus.NOT_FOUND_404);
+                return true;
+            }
+
+            response.getHeaders().put(HttpHeader.CONTENT_TYPE, APPLICATION_JSON);
+            response.write(true, ByteBuffer.wrap(objectMapper.writeValueAsBytes(body)), callback);
+            return true;
+        }
+
+        private Object route(String path) {
+            if (APPLIANCES_PATH.equals(path)) {
+                return stateStore.getApplianceIds();
+            }
+            if (!path.startsWith(APPLIANCES_PATH + "/")) {
+                return null;
+            }
+
+            // {id}/state[/{uid}]
+            var segments = StringUtils.split(path.substring(APPLIANCES_PATH.length() + 1), '/');
+            if (segments.length < 2 || !STATE.equals(segments[1])) {
+                return null;
+            }
+            if (segments.length == 2) {
+                return stateStore.getState(segments[0]);
+            }
+            if (segments.length == 3 && StringUtils.isNumeric(segments[2])) {
+                return stateStore.getState(segments[0], Integer.parseInt(segments[2])).orElse(null);
+            }
+            return null;
+        }
+    }
+
+    @WebSocket
+    @RequiredArgsConstructor
+    public class DeltaEndpoint {
+        private final String applianceId;
+        private Runnable unsubscribe;
+
+        @OnWebSocketOpen
+        public void onOpen(Session session) {
+            unsubscribe = stateStore.subscribe(change -> {
+                if (applianceId != null && !applianceId.equals(change.getApplianceId())) {
+                    return;
+                }
+                try {
+                    session.sendText(objectMapper.writeValueAsString(change),
+                            org.eclipse.jetty.websocket.api.Callback.NOOP);
+                } catch (JsonProcessingException e) {
+                    log.atError().log("Error serializing state change", e);
+                }
+            });
+        }
+
+        @OnWebSocketClose
+        public void onClose(int statusCode, String reason) {
+            if (unsubscribe != null) {
+                unsubscribe.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.bruestel.homeconnect.haproxy.service.state;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from uid to the latest raw JSON value and its timestamp. Keys and timestamps are
+ * kept in primitive arrays, so neither keys nor entries are boxed. Not thread-safe.
+ */
+class UidValueTable {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final float MAX_LOAD_FACTOR = 0.6f;
+
+    private int[] uids;
+    private byte[][] values;
+    private long[] timestamps;
+    private int size;
+
+    UidValueTable() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the slot of the uid, or {@code -1} if it is unknown
+     */
+    int indexOf(int uid) {
+        var mask = uids.length - 1;
+        var slot = hash(uid) & mask;
+        while (uids[slot] != DataItem.NO_UID) {
+            if (uids[slot] == uid) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot the value was stored in
+     */
+    int put(int uid, byte[] value, long timestamp) {
+        if (size + 1 > uids.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+
+        var mask = uids.length - 1;
+        var slot = hash(uid) & mask;
+        while (uids[slot] != DataItem.NO_UID && uids[slot] != uid) {
+            slot = (slot + 1) & mask;
+        }
+        if (uids[slot] == DataItem.NO_UID) {
+            uids[slot] = uid;
+            size++;
+        }
+        values[slot] = value;
+        timestamps[slot] = timestamp;
+        return slot;
+    }
+
+    int uidAt(int slot) {
+        return uids[slot];
+    }
+
+    byte[] valueAt(int slot) {
+        return values[slot];
+    }
+
+    long timestampAt(int slot) {
+        return timestamps[slot];
+    }
+
+    void touch(int slot, long timestamp) {
+        timestamps[slot] = timestamp;
+    }
+
+    /**
+     * Number of slots, occupied slots have a uid other than {@link DataItem#NO_UID}.
+     */
+    int capacity() {
+        return uids.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        var oldUids = uids;
+        var oldValues = values;
+        var oldTimestamps = timestamps;
+
+        allocate(oldUids.length * 2);
+        for (int i = 0; i < oldUids.length; i++) {
+            if (oldUids[i] != DataItem.NO_UID) {
+                put(oldUids[i], oldValues[i], oldTimestamps[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        uids = new int[capacity];
+        Arrays.fill(uids, DataItem.NO_UID);
+        values = new byte[capacity][];
+        timestamps = new long[capacity];
+        size = 0;
+    }
+
+    private static int hash(int uid) {
+        var h = uid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
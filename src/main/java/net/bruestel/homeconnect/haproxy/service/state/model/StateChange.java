@@ -0,0 +1,17 @@
+package net.bruestel.homeconnect.haproxy.service.state.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import lombok.Value;
+
+@Value
+public class StateChange {
+    String applianceId;
+    int uid;
+    // raw JSON
+    @JsonRawValue
+    String value;
+    @JsonRawValue
+    String previousValue;
+    long timestamp;
+}
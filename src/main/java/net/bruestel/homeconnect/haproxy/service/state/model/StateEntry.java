@@ -0,0 +1,14 @@
+package net.bruestel.homeconnect.haproxy.service.state.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import lombok.Value;
+
+@Value
+public class StateEntry {
+    int uid;
+    // raw JSON
+    @JsonRawValue
+    String value;
+    long timestamp;
+}
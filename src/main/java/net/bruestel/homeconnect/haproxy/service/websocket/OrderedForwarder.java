@@ -0,0 +1,69 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Synchronized;
+import lombok.Value;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards messages of one direction, optionally delayed. A delayed message also holds back all messages behind
+ * it, so the order on the wire never changes (required by the AES CBC/HMAC chain). The scheduler may be shared and
+ * run several tasks at once, so a scheduled task sends all messages that are due, in order, instead of its own.
+ */
+@RequiredArgsConstructor
+public class OrderedForwarder {
+    private final ScheduledExecutorService scheduler;
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private long notBefore;
+    private boolean closed;
+
+    @Synchronized
+    public void forward(long delayMillis, Runnable send) {
+        if (closed) {
+            return;
+        }
+        if (delayMillis <= 0 && pending.isEmpty()) {
+            send.run();
+            return;
+        }
+
+        var now = System.nanoTime();
+        var due = Math.max(now + TimeUnit.MILLISECONDS.toNanos(delayMillis), notBefore);
+        notBefore = due;
+        pending.addLast(new Pending(due, send));
+        try {
+            scheduler.schedule(this::sendDue, due - now, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // proxy stopped
+            pending.removeLast();
+        }
+    }
+
+    /**
+     * Drops the messages not sent yet, the session is closed.
+     */
+    @Synchronized
+    public void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    @Synchronized
+    private void sendDue() {
+        var now = System.nanoTime();
+        while (!pending.isEmpty() && pending.peekFirst().getDue() - now <= 0) {
+            pending.removeFirst().getSend().run();
+        }
+    }
+
+    @Value
+    private static class Pending {
+        long due;
+        Runnable send;
+    }
+}
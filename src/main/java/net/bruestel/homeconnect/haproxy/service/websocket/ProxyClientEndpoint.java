@@ -0,0 +1,54 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.multiplex.SessionMultiplexer;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Connection of the proxy to the appliance.
+ */
+public class ProxyClientEndpoint extends ProxyConnection {
+    private static final String NAME = "appliance";
+
+    @Getter(AccessLevel.PROTECTED)
+    private final ProxyServerEndpoint serverEndpoint;
+    @Getter(AccessLevel.PROTECTED)
+    @Setter(AccessLevel.PROTECTED)
+    private SessionMultiplexer multiplexer;
+
+    public ProxyClientEndpoint(ProxyService proxyService, ProxyServerEndpoint serverEndpoint, TransportCodec codec) {
+        super(proxyService, codec, NAME);
+        this.serverEndpoint = serverEndpoint;
+    }
+
+    @Override
+    protected void opened() {
+        serverEndpoint.setClientEndpoint(this);
+        proxyService.applianceConnectionEstablished(this);
+    }
+
+    @Override
+    protected void received(byte[] data) {
+        proxyService.receivedMessageFromAppliance(this, data);
+    }
+
+    @Override
+    protected void closed(int code, String reason) {
+        proxyService.applianceConnectionClosed(this, code, reason);
+    }
+
+    @Override
+    protected Collection<ProxyServerEndpoint> getTargets() {
+        // a shared appliance session feeds all attached app sessions
+        return multiplexer != null ? proxyService.getAppEndpoints(this) : List.of(serverEndpoint);
+    }
+
+    protected String getApplianceSessionId() {
+        return getSessionId();
+    }
+}
@@ -0,0 +1,30 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.service.rule.RuleEngine;
+import net.bruestel.homeconnect.haproxy.service.websocket.model.ProxySettings;
+
+import java.net.URI;
+import java.util.function.UnaryOperator;
+
+/**
+ * Everything of a proxy that can be swapped while it is running (see {@link ProxyService#reconfigure}): the secrets
+ * and the appliance address (both part of the {@link Transport}), the rules and the settings.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ProxyConfiguration {
+    @NonNull
+    Transport transport;
+    // picks the address of the appliance for every connect, e.g. by racing all known addresses
+    @NonNull
+    @Builder.Default
+    UnaryOperator<URI> applianceUriSelector = UnaryOperator.identity();
+    @NonNull
+    RuleEngine ruleEngine;
+    @NonNull
+    ProxySettings settings;
+}
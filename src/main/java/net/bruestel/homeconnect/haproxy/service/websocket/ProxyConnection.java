@@ -0,0 +1,266 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.flow.OutboundQueue;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.CloseStatus;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.FrameHandler;
+import org.eclipse.jetty.websocket.core.OpCode;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One WebSocket connection of the proxy on the Jetty core API. Text and binary messages are handed over as the raw
+ * payload bytes, sends are asynchronous, so a reader never blocks on the other connection. Instead, the next frame is
+ * only read once the outbound queues of all connections it is forwarded to are below their high water mark.
+ */
+@Slf4j
+public abstract class ProxyConnection implements FrameHandler {
+    private static final AtomicLong SESSION_IDS = new AtomicLong();
+    private static final int MAX_MESSAGE_SIZE = 4 * 1024 * 1024;
+    private static final int INITIAL_MESSAGE_BUFFER_SIZE = 1024;
+    private static final byte[] PING_PAYLOAD = new byte[] {1};
+
+    protected final ProxyService proxyService;
+    private final TransportCodec codec;
+    private final String name;
+    private final String sessionId = String.valueOf(SESSION_IDS.incrementAndGet());
+    private final ScheduledExecutorService scheduler;
+    private final OrderedForwarder forwarder;
+    private final Object sendLock = new Object();
+    // set once the session is open, the outbound queue aborts it without a reference to the connection
+    private final AtomicReference<CoreSession> session = new AtomicReference<>();
+    private final OutboundQueue outboundQueue;
+
+    private volatile ScheduledFuture<?> ping;
+    // fragments of the current message
+    private byte[] messageBuffer = new byte[INITIAL_MESSAGE_BUFFER_SIZE];
+    private int messageLength;
+
+    protected ProxyConnection(ProxyService proxyService, TransportCodec codec, String name) {
+        this.proxyService = proxyService;
+        this.codec = codec;
+        this.name = name;
+        this.scheduler = proxyService.getScheduler();
+        this.forwarder = new OrderedForwarder(scheduler);
+        var abortedSession = session;
+        this.outboundQueue = proxyService.getFlowControl().newQueue(name + " (" + sessionId + ")", scheduler,
+                () -> abort(abortedSession));
+    }
+
+    protected abstract void opened();
+
+    protected abstract void received(byte[] data);
+
+    protected abstract void closed(int code, String reason);
+
+    /**
+     * @return the connections the messages of this connection are forwarded to
+     */
+    protected abstract Collection<? extends ProxyConnection> getTargets();
+
+    @Override
+    public void onOpen(CoreSession coreSession, Callback callback) {
+        session.set(coreSession);
+        outboundQueue.open();
+        callback.succeeded();
+        opened();
+
+        ping = scheduler.scheduleAtFixedRate(() -> {
+            if (isOpen()) {
+                log.atDebug().log("Sending PING to {} ({}). ", getName(), sessionId);
+                coreSession.sendFrame(new Frame(OpCode.PING,
+                        ByteBuffer.wrap(PING_PAYLOAD)), Callback.NOOP, false);
+            }
+        }, 10, 30, TimeUnit.SECONDS);
+        demandWhenWritable();
+    }
+
+    @Override
+    public void onFrame(Frame frame, Callback callback) {
+        switch (frame.getOpCode()) {
+            case OpCode.TEXT, OpCode.BINARY, OpCode.CONTINUATION -> {
+                if (!append(frame.getPayload())) {
+                    callback.succeeded();
+                    session.get().close(CloseStatus.MESSAGE_TOO_LARGE, "Message too large", Callback.NOOP);
+                    return;
+                }
+                callback.succeeded();
+                if (frame.isFin()) {
+                    var data = Arrays.copyOf(messageBuffer, messageLength);
+                    messageLength = 0;
+                    received(data);
+                }
+            }
+            case OpCode.PING -> {
+                var pong = new Frame(OpCode.PONG, copy(frame.getPayload()));
+                session.get().sendFrame(pong, callback, false);
+            }
+            // the session answers CLOSE once the callback completed
+            default -> callback.succeeded();
+        }
+
+        if (frame.getOpCode() != OpCode.CLOSE) {
+            demandWhenWritable();
+        }
+    }
+
+    @Override
+    public void onError(Throwable cause, Callback callback) {
+        log.atDebug().log("Error in {} WebSocket session ({}): {}", getName(), sessionId, cause.getMessage());
+        callback.succeeded();
+    }
+
+    @Override
+    public void onClosed(CloseStatus closeStatus, Callback callback) {
+        try {
+            closed(closeStatus.getCode(), closeStatus.getReason());
+        } finally {
+            outboundQueue.close();
+            forwarder.close();
+            var pingTask = ping;
+            if (pingTask != null) {
+                pingTask.cancel(false);
+            }
+            codec.close();
+            callback.succeeded();
+        }
+    }
+
+    protected String getName() {
+        return name;
+    }
+
+    protected String getSessionId() {
+        return sessionId;
+    }
+
+    protected boolean isOpen() {
+        var coreSession = session.get();
+        return coreSession != null && coreSession.isOutputOpen();
+    }
+
+    protected ReceivedFrame open(byte[] data) throws GeneralSecurityException {
+        return codec.open(data);
+    }
+
+    protected void forward(long delayMillis, Runnable send) {
+        forwarder.forward(delayMillis, send);
+    }
+
+    /**
+     * Sends a frame received on the other connection, unchanged if the codec allows it.
+     */
+    protected void send(ReceivedFrame frame, byte[] payload) {
+        // sealing and sending is one step, the wire order must match the codec state
+        synchronized (sendLock) {
+            if (!outboundQueue.admit()) {
+                return;
+            }
+            try {
+                sendData(codec.seal(frame, payload));
+            } catch (GeneralSecurityException e) {
+                log.atError().log("Error encoding message to {}", getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Sends a message originated by the proxy.
+     */
+    protected void send(byte[] payload) {
+        synchronized (sendLock) {
+            if (!outboundQueue.admit()) {
+                return;
+            }
+            try {
+                sendData(codec.seal(payload));
+            } catch (GeneralSecurityException e) {
+                log.atError().log("Error encoding message to {}", getName(), e);
+            }
+        }
+    }
+
+    protected void close() {
+        var coreSession = session.get();
+        if (coreSession != null && coreSession.isOutputOpen()) {
+            coreSession.close(CloseStatus.NORMAL, null, Callback.NOOP);
+        }
+    }
+
+    // a consumer that is stuck does not answer the close handshake either
+    private static void abort(AtomicReference<CoreSession> session) {
+        var coreSession = session.get();
+        if (coreSession != null) {
+            coreSession.abort();
+        }
+    }
+
+    // the next frame is read once all targets can take it
+    private void demandWhenWritable() {
+        for (ProxyConnection target : getTargets()) {
+            if (!target.outboundQueue.whenWritable(this::demandWhenWritable)) {
+                return;
+            }
+        }
+        var coreSession = session.get();
+        if (coreSession.isInputOpen()) {
+            coreSession.demand();
+        }
+    }
+
+    private void sendData(byte[] data) {
+        var coreSession = session.get();
+        if (coreSession == null || !coreSession.isOutputOpen()) {
+            log.atWarn().log("{} session is not open. Message not sent.", getName());
+            return;
+        }
+
+        var opCode = codec.isBinary() ? OpCode.BINARY : OpCode.TEXT;
+        outboundQueue.enqueued(data.length);
+        coreSession.sendFrame(new Frame(opCode, ByteBuffer.wrap(data)),
+                Callback.from(() -> outboundQueue.dequeued(data.length), failure -> {
+                    outboundQueue.dequeued(data.length);
+                    log.atDebug().log("Error sending message to {}: {}", getName(), failure.getMessage());
+                }),
+                false);
+    }
+
+    private boolean append(ByteBuffer payload) {
+        var length = payload != null ? payload.remaining() : 0;
+        if (messageLength + length > MAX_MESSAGE_SIZE) {
+            log.atWarn().log("Message from {} exceeds {} bytes.", getName(), MAX_MESSAGE_SIZE);
+            messageLength = 0;
+            return false;
+        }
+        if (messageLength + length > messageBuffer.length) {
+            messageBuffer = Arrays.copyOf(messageBuffer, Math.max(messageBuffer.length * 2, messageLength + length));
+        }
+        if (length > 0) {
+            payload.get(messageBuffer, messageLength, length);
+            messageLength += length;
+        }
+        return true;
+    }
+
+    private static ByteBuffer copy(ByteBuffer payload) {
+        if (payload == null) {
+            return null;
+        }
+        var copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.slice()).flip();
+        return copy;
+    }
+}
@@ -0,0 +1,131 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.websocket.core.client.WebSocketCoreClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One configuration of a running proxy with its own WebSocket client. App sessions stay with the generation they
+ * were opened in. A replaced generation is retired: it serves its sessions until the last one is closed and stops
+ * its client then.
+ */
+@Slf4j
+class ProxyGeneration {
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    @Getter
+    private final int id = IDS.incrementAndGet();
+    @Getter
+    private final ProxyConfiguration configuration;
+
+    @Getter
+    private volatile WebSocketCoreClient webSocketClient;
+    private HttpClient httpClient;
+    private int sessions;
+    private boolean retired;
+    private boolean stopped;
+
+    // appliance connection shared by the app sessions of this generation in multiplex mode, completed with null if
+    // connecting failed
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private CompletableFuture<ProxyClientEndpoint> sharedConnection;
+
+    ProxyGeneration(ProxyConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    void start() {
+        try {
+            httpClient = configuration.getTransport().newHttpClient();
+            httpClient.start();
+
+            webSocketClient = new WebSocketCoreClient(httpClient, null);
+            webSocketClient.start();
+        } catch (Exception e) {
+            stop();
+            throw new IllegalStateException("Could not initialize websocket client!", e);
+        }
+    }
+
+    void stop() {
+        if (httpClient != null) {
+            try {
+                httpClient.stop();
+            } catch (Exception e) {
+                log.atError().log("Error stopping http client", e);
+            }
+        }
+
+        if (webSocketClient != null) {
+            try {
+                webSocketClient.stop();
+            } catch (Exception e) {
+                log.atError().log("Error stopping websocket client", e);
+            }
+        }
+        webSocketClient = null;
+        httpClient = null;
+    }
+
+    /**
+     * @return {@code false} if the generation was retired and stopped before the session was opened
+     */
+    synchronized boolean acquire() {
+        if (stopped) {
+            return false;
+        }
+        sessions++;
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the generation was retired and stopped with its last session
+     */
+    synchronized boolean release() {
+        if (--sessions == 0 && retired) {
+            stopRetired();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops the generation once its sessions are drained.
+     *
+     * @return {@code true} if the generation had no sessions and was stopped right away
+     */
+    synchronized boolean retire() {
+        retired = true;
+        if (sessions == 0) {
+            stopRetired();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops the generation right away, its sessions lose their appliance connection.
+     */
+    synchronized void close() {
+        stopped = true;
+        stop();
+    }
+
+    synchronized boolean isDraining() {
+        return retired && !stopped;
+    }
+
+    private void stopRetired() {
+        log.atInfo().log("Configuration {} drained, stopping its websocket client.", id);
+        stopped = true;
+        stop();
+    }
+}
@@ -0,0 +1,64 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.reconnect.SessionResumption;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Connection of the app to the proxy.
+ */
+public class ProxyServerEndpoint extends ProxyConnection {
+    private static final String NAME = "app";
+
+    // configuration the session was opened with
+    @Getter(AccessLevel.PROTECTED)
+    private final ProxyGeneration generation;
+    @Getter(AccessLevel.PROTECTED)
+    @Setter(AccessLevel.PROTECTED)
+    private volatile ProxyClientEndpoint clientEndpoint;
+    @Getter(AccessLevel.PROTECTED)
+    @Setter(AccessLevel.PROTECTED)
+    private volatile SessionResumption resumption;
+
+    ProxyServerEndpoint(ProxyService proxyService, ProxyGeneration generation, TransportCodec codec) {
+        super(proxyService, codec, NAME);
+        this.generation = generation;
+    }
+
+    @Override
+    protected void opened() {
+        proxyService.appConnectionEstablished(this);
+    }
+
+    @Override
+    protected void received(byte[] data) {
+        proxyService.receivedMessageFromApp(this, data);
+    }
+
+    @Override
+    protected void closed(int code, String reason) {
+        proxyService.appConnectionClosed(this, code, reason);
+        clientEndpoint = null;
+    }
+
+    @Override
+    protected Collection<ProxyClientEndpoint> getTargets() {
+        var target = clientEndpoint;
+        return target != null ? List.of(target) : List.of();
+    }
+
+    protected String getAppSessionId() {
+        return getSessionId();
+    }
+
+    @Override
+    protected void close() {
+        super.close();
+        clientEndpoint = null;
+    }
+}
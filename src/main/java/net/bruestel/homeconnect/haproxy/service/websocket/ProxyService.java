@@ -0,0 +1,711 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import static net.bruestel.homeconnect.haproxy.service.websocket.Const.HOMECONNECT_WS_PATH;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.cache.ResponseCache;
+import net.bruestel.homeconnect.haproxy.service.coalescing.RequestCoalescer;
+import net.bruestel.homeconnect.haproxy.service.message.MessageDecoder;
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.rule.RuleEngine;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleResult;
+import net.bruestel.homeconnect.haproxy.service.websocket.flow.FlowControl;
+import net.bruestel.homeconnect.haproxy.service.websocket.model.ProxySettings;
+import net.bruestel.homeconnect.haproxy.service.websocket.multiplex.MultiplexClient;
+import net.bruestel.homeconnect.haproxy.service.websocket.multiplex.SessionMultiplexer;
+import net.bruestel.homeconnect.haproxy.service.websocket.reconnect.SessionResumption;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.websocket.core.server.WebSocketUpgradeHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Proxies the WebSocket connection of the app to the appliance. Every frame runs through the same stages, no matter
+ * the {@link Transport}:
+ * <ol>
+ *     <li>ingress: the endpoint reads the frame</li>
+ *     <li>codec: the {@link TransportCodec} of the connection opens the frame</li>
+ *     <li>analysis: decoding, rules, listener, response cache, request coalescing and multiplexing</li>
+ *     <li>egress: the endpoint of the other side seals and sends the frame in order</li>
+ * </ol>
+ * The {@link FlowControl} suspends the ingress of a connection while the egress it feeds is backed up. With
+ * reconnect enabled, a lost appliance connection is re-established while the app session stays up
+ * ({@link SessionResumption}).
+ * <p>
+ * The {@link ProxyConfiguration} can be replaced while the proxy is running. The port stays bound, new app sessions
+ * use the new configuration and existing ones are drained on the old one ({@link ProxyGeneration}).
+ */
+@Slf4j
+public class ProxyService {
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = 250;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 8_000;
+    private static final int SCHEDULER_THREADS = 4;
+
+    private final int port;
+    private final WebSocketProxyServiceListener listener;
+    private final MessageDecoder messageDecoder;
+    private final MessageRewriter messageRewriter;
+    private final RequestCoalescer requestCoalescer;
+    private final ResponseCache responseCache;
+    @Getter(AccessLevel.PROTECTED)
+    private final FlowControl flowControl;
+    private final Set<ProxyServerEndpoint> appEndpoints = ConcurrentHashMap.newKeySet();
+    private final LongAdder resumedSessions = new LongAdder();
+    private final LongAdder reconfigurations = new LongAdder();
+    private final Object multiplexLock = new Object();
+    // the current generation and the retired ones still serving sessions
+    private final Set<ProxyGeneration> generations = ConcurrentHashMap.newKeySet();
+
+    private volatile ProxyGeneration generation;
+    private Server server;
+    private ServerConnector serverConnector;
+    // pings, delayed forwards, slow consumer checks and reconnects of all connections, idle threads time out
+    @Getter(AccessLevel.PROTECTED)
+    private final ScheduledExecutorService scheduler = newScheduler();
+    private ScheduledFuture<?> coalescerExpiry;
+
+    /**
+     * @param applianceUriSelector picks the address of the appliance for every connect, e.g. by racing all known
+     *                             addresses
+     */
+    public ProxyService(Transport transport,
+                        UnaryOperator<URI> applianceUriSelector,
+                        WebSocketProxyServiceListener listener,
+                        RuleEngine ruleEngine,
+                        ProxySettings settings,
+                        int port) {
+        this(ProxyConfiguration.builder()
+                        .transport(transport)
+                        .applianceUriSelector(applianceUriSelector)
+                        .ruleEngine(ruleEngine)
+                        .settings(settings)
+                        .build(),
+                listener,
+                port);
+    }
+
+    public ProxyService(ProxyConfiguration configuration, WebSocketProxyServiceListener listener, int port) {
+        var settings = configuration.getSettings();
+        this.listener = listener;
+        this.messageDecoder = new MessageDecoder();
+        this.messageRewriter = new MessageRewriter(messageDecoder);
+        this.requestCoalescer = new RequestCoalescer(messageRewriter, settings.getCoalescingWindow());
+        this.responseCache = new ResponseCache(messageRewriter, settings.getResponseCacheTtls());
+        this.flowControl = new FlowControl(settings);
+        this.generation = new ProxyGeneration(configuration);
+        this.port = port;
+    }
+
+    @Synchronized
+    public void start() throws Exception {
+        if (server != null) {
+            stop();
+        }
+        var transport = generation.getConfiguration().getTransport();
+        log.atInfo().log("Starting WebSocket server to proxy {} on port {}...",
+                transport.getHomeApplianceWebsocketUri(), port);
+
+        server = new Server();
+        serverConnector = transport.newServerConnector(server, port);
+        server.addConnector(serverConnector);
+
+        var webSocketUpgradeHandler = new WebSocketUpgradeHandler();
+        webSocketUpgradeHandler.addMapping(HOMECONNECT_WS_PATH, (request, response, callback) -> {
+            // the codec must match the secrets the connection was accepted with
+            var current = generation;
+            return new ProxyServerEndpoint(this, current, current.getConfiguration().getTransport().newAppCodec());
+        });
+        server.setHandler(webSocketUpgradeHandler);
+
+        var current = new ProxyGeneration(generation.getConfiguration());
+        current.start();
+        generations.add(current);
+        generation = current;
+
+        server.start();
+        coalescerExpiry = scheduler.scheduleWithFixedDelay(requestCoalescer::expire, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Replaces secrets, appliance address, rules and settings of the running proxy, without closing the server port.
+     * App sessions opened from now on use the new configuration, the existing ones keep the old one until they are
+     * closed. Flow control, coalescing and response cache settings apply to all sessions right away, cached
+     * responses are dropped.
+     *
+     * @throws IllegalArgumentException if the configuration uses another kind of transport (AES or TLS)
+     */
+    @Synchronized
+    public void reconfigure(ProxyConfiguration configuration) throws Exception {
+        var previous = generation;
+        if (previous.getConfiguration().getTransport().getClass() != configuration.getTransport().getClass()) {
+            throw new IllegalArgumentException("The transport of a proxy cannot be changed");
+        }
+
+        var settings = configuration.getSettings();
+        flowControl.reconfigure(settings);
+        requestCoalescer.reconfigure(settings.getCoalescingWindow());
+        responseCache.reconfigure(settings.getResponseCacheTtls());
+        if (server == null) {
+            generation = new ProxyGeneration(configuration);
+            return;
+        }
+
+        var next = new ProxyGeneration(configuration);
+        next.start();
+        try {
+            configuration.getTransport().updateServerConnector(serverConnector);
+        } catch (Exception e) {
+            next.close();
+            throw e;
+        }
+        generations.add(next);
+        generation = next;
+        reconfigurations.increment();
+        log.atInfo().log("Proxy reconfigured (configuration {}, appliance {}), {} session(s) draining.",
+                next.getId(), configuration.getTransport().getHomeApplianceWebsocketUri(), appEndpoints.stream()
+                        .filter(serverEndpoint -> serverEndpoint.getGeneration() == previous)
+                        .count());
+
+        if (previous.retire()) {
+            generations.remove(previous);
+        }
+    }
+
+    public ProxyConfiguration getConfiguration() {
+        return generation.getConfiguration();
+    }
+
+    @Synchronized
+    public void stop() {
+        if (server != null) {
+            log.atInfo().log("Stopping WebSocket server to proxy {} on port {}...",
+                    generation.getConfiguration().getTransport().getHomeApplianceWebsocketUri(), port);
+            try {
+                server.stop();
+            } catch (Exception e) {
+                log.atError().log("Error stopping WebSocket server", e);
+            }
+        }
+
+        if (coalescerExpiry != null) {
+            coalescerExpiry.cancel(false);
+            coalescerExpiry = null;
+        }
+        generations.forEach(ProxyGeneration::close);
+        generations.clear();
+        generation = new ProxyGeneration(generation.getConfiguration());
+        server = null;
+        serverConnector = null;
+    }
+
+    protected void appConnectionEstablished(ProxyServerEndpoint serverEndpoint) {
+        log.atInfo().log("[App] Connection established (appSessionId={}).", serverEndpoint.getAppSessionId());
+        var serverGeneration = serverEndpoint.getGeneration();
+        if (!serverGeneration.acquire()) {
+            log.atWarn().log("[App] Configuration replaced while connecting. Closing session.");
+            serverEndpoint.close();
+            return;
+        }
+        appEndpoints.add(serverEndpoint);
+
+        var settings = serverGeneration.getConfiguration().getSettings();
+        if (!settings.isMultiplex()) {
+            if (settings.isReconnect()) {
+                serverEndpoint.setResumption(new SessionResumption(messageRewriter, settings.getReconnectBufferSize()));
+            }
+            connectToHomeAppliance(serverEndpoint, null);
+            return;
+        }
+
+        joinSharedConnection(serverEndpoint);
+    }
+
+    protected void applianceConnectionEstablished(ProxyClientEndpoint clientEndpoint) {
+        log.atInfo()
+                .addArgument(clientEndpoint.getApplianceSessionId())
+                .addArgument(clientEndpoint.getServerEndpoint().getAppSessionId())
+                .log("[HA ] Connection established (applianceSessionId={}, appSessionId={}).");
+    }
+
+    protected void receivedMessageFromAppliance(ProxyClientEndpoint clientEndpoint, byte[] data) {
+        var serverEndpoint = clientEndpoint.getServerEndpoint();
+        var appSessionId = serverEndpoint.getAppSessionId();
+
+        ReceivedFrame frame;
+        try {
+            frame = clientEndpoint.open(data);
+        } catch (GeneralSecurityException e) {
+            log.atError().log("Error decoding frame from home appliance", e);
+            return;
+        }
+        log.atInfo()
+                .addArgument(() -> new String(frame.getPayload(), StandardCharsets.UTF_8))
+                .addArgument(clientEndpoint.getApplianceSessionId())
+                .addArgument(appSessionId)
+                .log("[HA ] Received message from home appliance (message={}, applianceSessionId={}, appSessionId={}). ");
+
+        var multiplexer = clientEndpoint.getMultiplexer();
+        var resumption = serverEndpoint.getResumption();
+        var decodedMessage = decodeMessage(frame.getPayload());
+        if (decodedMessage == null) {
+            if (multiplexer == null) {
+                clientEndpoint.forward(0, () -> serverEndpoint.send(frame, frame.getPayload()));
+            }
+            return;
+        }
+
+        // the proxy answers the handshake of a reconnected appliance session for the app
+        if (resumption != null
+                && resumption.resume(decodedMessage, message -> clientEndpoint.send(message.getPayload()))) {
+            resumedSessions.increment();
+            listener.onApplianceMessage(decodedMessage, StringUtils.substringBefore(appSessionId, "-"));
+            return;
+        }
+
+        var ruleResult = serverEndpoint.getGeneration().getConfiguration().getRuleEngine()
+                .evaluate(decodedMessage, Sender.HOME_APPLIANCE);
+        var forwardedMessage = resumption != null
+                ? resumption.toApp(forwardedMessage(decodedMessage, ruleResult))
+                : forwardedMessage(decodedMessage, ruleResult);
+        if (multiplexer == null) {
+            listener.onApplianceMessage(forwardedMessage, StringUtils.substringBefore(appSessionId, "-"));
+        }
+        responseCache.invalidate(forwardedMessage);
+        if (ruleResult.isDrop()) {
+            log.atDebug().log("[App] Message dropped by rule.");
+            if (multiplexer == null) {
+                // identical requests of other sessions are not answered from this response
+                requestCoalescer.drop(appSessionId, forwardedMessage);
+            }
+            return;
+        }
+
+        log.atDebug().log("[App] Forward message to app.");
+        if (multiplexer != null) {
+            // the listener is notified per app session by the multiplex client
+            clientEndpoint.forward(ruleResult.getDelayMillis(), () -> multiplexer.onApplianceMessage(forwardedMessage));
+        } else {
+            // an unchanged message still holds the payload of the frame, which the codec relays as it is
+            var payload = forwardedMessage.getPayload();
+            clientEndpoint.forward(ruleResult.getDelayMillis(), () -> {
+                serverEndpoint.send(frame, payload);
+                completeRequest(appSessionId, forwardedMessage);
+            });
+        }
+    }
+
+    protected void receivedMessageFromApp(ProxyServerEndpoint serverEndpoint, byte[] data) {
+        var appSessionId = serverEndpoint.getAppSessionId();
+        var clientEndpoint = serverEndpoint.getClientEndpoint();
+        var resumption = serverEndpoint.getResumption();
+
+        ReceivedFrame frame;
+        try {
+            frame = serverEndpoint.open(data);
+        } catch (GeneralSecurityException e) {
+            log.atError().log("Error decoding frame from app", e);
+            return;
+        }
+        log.atInfo()
+                .addArgument(() -> new String(frame.getPayload(), StandardCharsets.UTF_8))
+                .addArgument(clientEndpoint != null ? clientEndpoint.getApplianceSessionId() : null)
+                .addArgument(appSessionId)
+                .log("[App] Received message from app (message={}, applianceSessionId={}, appSessionId={}). ");
+
+        // during a reconnect, requests are held back by the session resumption
+        if (clientEndpoint == null && resumption == null) {
+            log.atWarn().log("[HA ] No connection to home appliance. Message not sent.");
+            return;
+        }
+
+        var multiplexer = clientEndpoint != null ? clientEndpoint.getMultiplexer() : null;
+        var decodedMessage = decodeMessage(frame.getPayload());
+        if (decodedMessage == null) {
+            if (multiplexer == null && clientEndpoint != null) {
+                serverEndpoint.forward(0, () -> clientEndpoint.send(frame, frame.getPayload()));
+            }
+            return;
+        }
+
+        var ruleResult = serverEndpoint.getGeneration().getConfiguration().getRuleEngine()
+                .evaluate(decodedMessage, Sender.APP);
+        var forwardedMessage = forwardedMessage(decodedMessage, ruleResult);
+        listener.onAppMessage(forwardedMessage, StringUtils.substringBefore(appSessionId, "-"));
+        if (ruleResult.isDrop()) {
+            log.atDebug().log("[HA ] Message dropped by rule.");
+            return;
+        }
+
+        var cachedResponse = responseCache.lookup(forwardedMessage);
+        if (cachedResponse != null) {
+            log.atDebug().log("[App] Request answered from response cache.");
+            // in order with the messages of the appliance, if connected
+            (clientEndpoint != null ? clientEndpoint : serverEndpoint)
+                    .forward(0, () -> deliverToApp(serverEndpoint, cachedResponse));
+            return;
+        }
+
+        var delayMillis = ruleResult.getDelayMillis();
+        if (requestCoalescer.join(appSessionId, forwardedMessage, response -> deliverToApp(serverEndpoint, response),
+                () -> forwardToAppliance(serverEndpoint, frame, forwardedMessage, delayMillis))) {
+            log.atDebug().log("[HA ] Request coalesced with identical request in flight.");
+            return;
+        }
+        forwardToAppliance(serverEndpoint, frame, forwardedMessage, delayMillis);
+    }
+
+    // also called for a coalesced request that leads its flight later on, the session state is read again
+    private void forwardToAppliance(ProxyServerEndpoint serverEndpoint, ReceivedFrame frame, Message forwardedMessage,
+                                    long delayMillis) {
+        var appSessionId = serverEndpoint.getAppSessionId();
+        var clientEndpoint = serverEndpoint.getClientEndpoint();
+        var resumption = serverEndpoint.getResumption();
+        if (clientEndpoint == null && resumption == null) {
+            log.atWarn().log("[HA ] No connection to home appliance. Message not sent.");
+            return;
+        }
+        responseCache.expect(appSessionId, forwardedMessage);
+
+        log.atDebug().log("[HA ] Forward message to home appliance.");
+        var multiplexer = clientEndpoint != null ? clientEndpoint.getMultiplexer() : null;
+        if (multiplexer != null) {
+            serverEndpoint.forward(delayMillis, () -> multiplexer.onAppMessage(appSessionId, forwardedMessage));
+        } else {
+            var applianceMessage = resumption != null ? resumption.toAppliance(forwardedMessage) : forwardedMessage;
+            if (applianceMessage == null) {
+                if (resumption.isOverflowed()) {
+                    log.atWarn().log("[App] Too many requests while reconnecting to home appliance. Closing session.");
+                    serverEndpoint.close();
+                } else {
+                    log.atDebug().log("[HA ] Request held back until home appliance is reconnected.");
+                }
+                return;
+            }
+
+            // an unchanged message still holds the payload of the frame, which the codec relays as it is
+            var payload = applianceMessage.getPayload();
+            serverEndpoint.forward(delayMillis, () -> {
+                var target = serverEndpoint.getClientEndpoint();
+                if (target != null) {
+                    target.send(frame, payload);
+                }
+            });
+        }
+    }
+
+    protected void appConnectionClosed(ProxyServerEndpoint serverEndpoint, int code, String reason) {
+        var appSessionId = serverEndpoint.getAppSessionId();
+        var clientEndpoint = serverEndpoint.getClientEndpoint();
+        log.atInfo()
+                .addArgument(clientEndpoint != null ? clientEndpoint.getApplianceSessionId() : null)
+                .addArgument(appSessionId)
+                .addArgument(code)
+                .addArgument(reason)
+                .log("[App] Connection closed (applianceSessionId={}, appSessionId={}, code={}, reason={}).");
+
+        if (appEndpoints.remove(serverEndpoint)) {
+            var serverGeneration = serverEndpoint.getGeneration();
+            if (serverGeneration.release()) {
+                generations.remove(serverGeneration);
+            }
+        }
+        requestCoalescer.abandon(appSessionId);
+        responseCache.abandon(appSessionId);
+        if (clientEndpoint == null) {
+            return;
+        }
+
+        var multiplexer = clientEndpoint.getMultiplexer();
+        if (multiplexer == null) {
+            clientEndpoint.close();
+            return;
+        }
+
+        synchronized (multiplexLock) {
+            if (multiplexer.detach(appSessionId) == 0) {
+                clearSharedClientEndpoint(clientEndpoint);
+                clientEndpoint.close();
+            }
+        }
+    }
+
+    protected void applianceConnectionClosed(ProxyClientEndpoint clientEndpoint, int code, String reason) {
+        log.atInfo()
+                .addArgument(clientEndpoint.getApplianceSessionId())
+                .addArgument(clientEndpoint.getServerEndpoint().getAppSessionId())
+                .addArgument(code)
+                .addArgument(reason)
+                .log("[HA ] Connection closed (applianceSessionId={}, appSessionId={}, code={}, reason={}).");
+
+        var multiplexer = clientEndpoint.getMultiplexer();
+        if (multiplexer == null) {
+            var serverEndpoint = clientEndpoint.getServerEndpoint();
+            var resumption = serverEndpoint.getResumption();
+            if (resumption != null && serverEndpoint.isOpen() && resumption.suspend()) {
+                serverEndpoint.setClientEndpoint(null);
+                log.atInfo().log("[HA ] Connection to home appliance lost, keeping app session (appSessionId={}).",
+                        serverEndpoint.getAppSessionId());
+                var reconnectTimeout = serverEndpoint.getGeneration().getConfiguration().getSettings()
+                        .getReconnectTimeout();
+                scheduleReconnect(serverEndpoint, 0, System.nanoTime() + reconnectTimeout.toNanos());
+                return;
+            }
+            serverEndpoint.close();
+            return;
+        }
+
+        synchronized (multiplexLock) {
+            clearSharedClientEndpoint(clientEndpoint);
+        }
+        multiplexer.closeAll();
+    }
+
+    public Map<String, Long> getStatistics() {
+        var statistics = new LinkedHashMap<>(generation.getConfiguration().getTransport().getStatistics());
+        statistics.put("Coalesced requests", requestCoalescer.getHits());
+        statistics.put("Non-coalesced requests", requestCoalescer.getMisses());
+        statistics.put("Response cache hits", responseCache.getHits());
+        statistics.put("Response cache misses", responseCache.getMisses());
+        var lookups = responseCache.getHits() + responseCache.getMisses();
+        statistics.put("Response cache hit rate (%)", lookups > 0 ? responseCache.getHits() * 100 / lookups : 0L);
+        statistics.put("Appliance reconnects", resumedSessions.sum());
+        statistics.put("Reconfigurations", reconfigurations.sum());
+        statistics.put("Draining configurations", generations.stream().filter(ProxyGeneration::isDraining).count());
+        statistics.putAll(flowControl.getStatistics());
+        return statistics;
+    }
+
+    // app sessions served by the appliance session
+    protected List<ProxyServerEndpoint> getAppEndpoints(ProxyClientEndpoint clientEndpoint) {
+        return appEndpoints.stream()
+                .filter(serverEndpoint -> serverEndpoint.getClientEndpoint() == clientEndpoint)
+                .toList();
+    }
+
+    // a stopped proxy has closed the app session, the attempt ends right away
+    private void scheduleReconnect(ProxyServerEndpoint serverEndpoint, int attempt, long deadline) {
+        scheduler.schedule(() -> reconnect(serverEndpoint, attempt, deadline),
+                reconnectDelayMillis(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect(ProxyServerEndpoint serverEndpoint, int attempt, long deadline) {
+        if (!serverEndpoint.isOpen()) {
+            return;
+        }
+        if (System.nanoTime() - deadline > 0) {
+            log.atWarn().log("[HA ] Home appliance is not back in time. Closing app session (appSessionId={}).",
+                    serverEndpoint.getAppSessionId());
+            serverEndpoint.close();
+            return;
+        }
+
+        log.atInfo().log("[HA ] Reconnecting to home appliance (attempt {})...", attempt + 1);
+        var clientEndpoint = connectToHomeAppliance(serverEndpoint, null);
+        if (clientEndpoint == null) {
+            scheduleReconnect(serverEndpoint, attempt + 1, deadline);
+        } else if (!serverEndpoint.isOpen()) {
+            // app session closed while connecting
+            clientEndpoint.close();
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        var executor = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, runnable -> {
+            var thread = new Thread(runnable, "proxy-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    // exponential backoff with jitter, a flapping network is not hit by all attempts at once
+    private static long reconnectDelayMillis(int attempt) {
+        var ceiling = Math.min(RECONNECT_MAX_DELAY_MILLIS, RECONNECT_INITIAL_DELAY_MILLIS << Math.min(attempt, 10));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private ProxyClientEndpoint connectToHomeAppliance(ProxyServerEndpoint serverEndpoint,
+                                                      MultiplexClient multiplexClient) {
+        var serverGeneration = serverEndpoint.getGeneration();
+        var configuration = serverGeneration.getConfiguration();
+        var transport = configuration.getTransport();
+        var homeApplianceWebsocketUri = configuration.getApplianceUriSelector()
+                .apply(transport.getHomeApplianceWebsocketUri());
+        log.atInfo().log("[HA ] Connect to home appliance ({})...", homeApplianceWebsocketUri);
+
+        var webSocketClient = serverGeneration.getWebSocketClient();
+        if (webSocketClient == null) {
+            log.atWarn().log("[HA ] Proxy stopped. Not connecting to home appliance.");
+            return null;
+        }
+        var clientEndpoint = new ProxyClientEndpoint(this, serverEndpoint, transport.newApplianceCodec());
+        if (multiplexClient != null) {
+            // ready before the appliance sends its first message
+            var multiplexer = new SessionMultiplexer(messageRewriter,
+                    message -> clientEndpoint.send(message.getPayload()));
+            multiplexer.attach(multiplexClient);
+            clientEndpoint.setMultiplexer(multiplexer);
+        }
+
+        try {
+            webSocketClient.connect(clientEndpoint, homeApplianceWebsocketUri).get();
+            return clientEndpoint;
+        } catch (IOException | ExecutionException e) {
+            log.atError().log("Error connecting to home appliance", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // the first app session connects to the appliance outside the multiplex lock, the others attach once it is open
+    private void joinSharedConnection(ProxyServerEndpoint serverEndpoint) {
+        var serverGeneration = serverEndpoint.getGeneration();
+        CompletableFuture<ProxyClientEndpoint> connection;
+        var connect = false;
+        synchronized (multiplexLock) {
+            connection = serverGeneration.getSharedConnection();
+            if (connection == null || connection.isDone() && !isOpen(connection.join())) {
+                connection = new CompletableFuture<>();
+                serverGeneration.setSharedConnection(connection);
+                connect = true;
+            }
+        }
+        if (connect) {
+            connectShared(serverEndpoint, connection);
+        } else {
+            connection.thenAccept(clientEndpoint -> attachToSharedConnection(serverEndpoint, clientEndpoint));
+        }
+    }
+
+    private void connectShared(ProxyServerEndpoint serverEndpoint, CompletableFuture<ProxyClientEndpoint> pending) {
+        var clientEndpoint = connectToHomeAppliance(serverEndpoint, multiplexClient(serverEndpoint));
+        if (clientEndpoint == null) {
+            synchronized (multiplexLock) {
+                var serverGeneration = serverEndpoint.getGeneration();
+                if (serverGeneration.getSharedConnection() == pending) {
+                    serverGeneration.setSharedConnection(null);
+                }
+            }
+        }
+        pending.complete(clientEndpoint);
+    }
+
+    private void attachToSharedConnection(ProxyServerEndpoint serverEndpoint, ProxyClientEndpoint clientEndpoint) {
+        if (clientEndpoint == null) {
+            log.atWarn().log("[HA ] No connection to home appliance (appSessionId={}).",
+                    serverEndpoint.getAppSessionId());
+            return;
+        }
+        synchronized (multiplexLock) {
+            if (!serverEndpoint.isOpen()) {
+                return;
+            }
+            if (clientEndpoint.isOpen()) {
+                serverEndpoint.setClientEndpoint(clientEndpoint);
+                clientEndpoint.getMultiplexer().attach(multiplexClient(serverEndpoint));
+                return;
+            }
+        }
+        // the shared connection was closed before this session was attached
+        joinSharedConnection(serverEndpoint);
+    }
+
+    private static boolean isOpen(ProxyClientEndpoint clientEndpoint) {
+        return clientEndpoint != null && clientEndpoint.isOpen();
+    }
+
+    // called with the multiplex lock held
+    private void clearSharedClientEndpoint(ProxyClientEndpoint clientEndpoint) {
+        var serverGeneration = clientEndpoint.getServerEndpoint().getGeneration();
+        var connection = serverGeneration.getSharedConnection();
+        if (connection != null && connection.getNow(null) == clientEndpoint) {
+            serverGeneration.setSharedConnection(null);
+        }
+    }
+
+    // sends a message that did not pass receivedMessageFromAppliance for this app session
+    private void deliverToApp(ProxyServerEndpoint serverEndpoint, Message message) {
+        serverEndpoint.send(message.getPayload());
+        listener.onApplianceMessage(message, StringUtils.substringBefore(serverEndpoint.getAppSessionId(), "-"));
+    }
+
+    // the response answers a request sent by this app session
+    private void completeRequest(String appSessionId, Message response) {
+        responseCache.complete(appSessionId, response);
+        requestCoalescer.complete(appSessionId, response);
+    }
+
+    private MultiplexClient multiplexClient(ProxyServerEndpoint serverEndpoint) {
+        var appSessionId = serverEndpoint.getAppSessionId();
+        return new MultiplexClient() {
+            @Override
+            public String getClientId() {
+                return appSessionId;
+            }
+
+            @Override
+            public void send(Message message) {
+                deliverToApp(serverEndpoint, message);
+                completeRequest(appSessionId, message);
+            }
+
+            @Override
+            public void close() {
+                serverEndpoint.close();
+            }
+        };
+    }
+
+    private Message decodeMessage(byte[] payload) {
+        try {
+            return messageDecoder.decode(payload);
+        } catch (IOException e) {
+            log.atError().log("Error decoding message: {}", new String(payload, StandardCharsets.UTF_8), e);
+            return null;
+        }
+    }
+
+    private Message forwardedMessage(Message message, RuleResult ruleResult) {
+        var forwardedMessage = message;
+        if (ruleResult.getPayload() != null) {
+            try {
+                forwardedMessage = messageDecoder.decode(ruleResult.getPayload());
+            } catch (IOException e) {
+                log.atError().log("Error decoding rewritten message", e);
+            }
+        }
+        return ruleResult.getTags().isEmpty()
+                ? forwardedMessage
+                : forwardedMessage.toBuilder().tags(ruleResult.getTags()).build();
+    }
+}
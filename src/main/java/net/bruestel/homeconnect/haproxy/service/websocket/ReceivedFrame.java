@@ -0,0 +1,10 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+/**
+ * A received WebSocket frame as read from the wire and its message payload.
+ */
+public interface ReceivedFrame {
+    byte[] getData();
+
+    byte[] getPayload();
+}
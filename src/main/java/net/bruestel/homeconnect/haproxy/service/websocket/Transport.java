@@ -0,0 +1,32 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+/**
+ * Connection setup and frame codecs of one appliance connection type (AES or TLS).
+ */
+public interface Transport {
+    URI getHomeApplianceWebsocketUri();
+
+    ServerConnector newServerConnector(Server server, int port) throws GeneralSecurityException;
+
+    /**
+     * Applies the secrets of this transport to a running connector of the same kind. Connections accepted from now
+     * on use them, established ones are not affected.
+     */
+    void updateServerConnector(ServerConnector connector) throws Exception;
+
+    HttpClient newHttpClient() throws GeneralSecurityException;
+
+    TransportCodec newAppCodec();
+
+    TransportCodec newApplianceCodec();
+
+    Map<String, Long> getStatistics();
+}
@@ -0,0 +1,29 @@
+package net.bruestel.homeconnect.haproxy.service.websocket;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Converts between WebSocket frames and message payloads on one connection. Instances are stateful (e.g. the AES
+ * CBC/HMAC chain) and must see every frame of their connection in wire order.
+ */
+public interface TransportCodec {
+    boolean isBinary();
+
+    ReceivedFrame open(byte[] data) throws GeneralSecurityException;
+
+    /**
+     * @return the frame data to send for a frame received on another connection, the received data if possible
+     */
+    byte[] seal(ReceivedFrame frame, byte[] payload) throws GeneralSecurityException;
+
+    /**
+     * @return the frame data to send for a message originated by the proxy
+     */
+    byte[] seal(byte[] payload) throws GeneralSecurityException;
+
+    /**
+     * Called once the connection is closed.
+     */
+    default void close() {
+    }
+}
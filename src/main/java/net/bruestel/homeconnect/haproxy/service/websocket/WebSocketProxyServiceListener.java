@@ -1,6 +1,8 @@
 package net.bruestel.homeconnect.haproxy.service.websocket;
 
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
 public interface WebSocketProxyServiceListener {
-    void onAppMessage(String message, String sessionId);
-    void onApplianceMessage(String message, String sessionId);
+    void onAppMessage(Message message, String sessionId);
+    void onApplianceMessage(Message message, String sessionId);
 }
@@ -0,0 +1,64 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.RequiredArgsConstructor;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.ReceivedFrame;
+import net.bruestel.homeconnect.haproxy.service.websocket.TransportCodec;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binary frames of one AES connection, received frames are decrypted with one stream and sent frames are encrypted
+ * with the other.
+ */
+@RequiredArgsConstructor
+class AesCodec implements TransportCodec {
+    private final AesFrameCipher decrypt;
+    private final AesFrameCipher encrypt;
+    private final LongAdder relayedFrames;
+    private final LongAdder reencryptedFrames;
+    // records the received frames, null if frame capture is disabled
+    private final AesFrameRecorder recorder;
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public ReceivedFrame open(byte[] data) throws GeneralSecurityException {
+        if (recorder != null) {
+            recorder.record(data);
+        }
+        return decrypt.open(data);
+    }
+
+    @Override
+    public byte[] seal(ReceivedFrame frame, byte[] payload) throws GeneralSecurityException {
+        if (!(frame instanceof AesFrame aesFrame)) {
+            return seal(payload);
+        }
+
+        var data = encrypt.seal(aesFrame, payload);
+        if (data == aesFrame.getData()) {
+            relayedFrames.increment();
+        } else {
+            reencryptedFrames.increment();
+        }
+        return data;
+    }
+
+    @Override
+    public byte[] seal(byte[] payload) throws GeneralSecurityException {
+        reencryptedFrames.increment();
+        return encrypt.seal(payload);
+    }
+
+    @Override
+    public void close() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.Getter;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.model.CryptoProvider;
+
+import org.conscrypt.Conscrypt;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+/**
+ * Creates the AES and HMAC primitives of the AES mode with the configured provider.
+ */
+@Slf4j
+public class AesCrypto {
+    static final String AES_CBC_NO_PADDING = "AES/CBC/NoPadding";
+    static final String HMAC_SHA_256 = "HmacSHA256";
+
+    private static final String CONSCRYPT_PROVIDER = "Conscrypt";
+    private static CryptoProvider fastestProvider;
+
+    @Getter
+    private final CryptoProvider cryptoProvider;
+    // null for the default JCE providers
+    private final Provider provider;
+
+    private AesCrypto(CryptoProvider cryptoProvider, Provider provider) {
+        this.cryptoProvider = cryptoProvider;
+        this.provider = provider;
+    }
+
+    public static AesCrypto of(CryptoProvider cryptoProvider) {
+        return switch (cryptoProvider) {
+            case AUTO -> of(fastestProvider());
+            case JDK -> new AesCrypto(CryptoProvider.JDK, null);
+            case CONSCRYPT -> {
+                if (!Conscrypt.isAvailable()) {
+                    log.atWarn().log("Conscrypt is not available on this platform, using the JDK provider.");
+                    yield new AesCrypto(CryptoProvider.JDK, null);
+                }
+                yield new AesCrypto(CryptoProvider.CONSCRYPT,
+                        Conscrypt.newProviderBuilder().setName(CONSCRYPT_PROVIDER).build());
+            }
+        };
+    }
+
+    Cipher newCipher() throws GeneralSecurityException {
+        return provider != null
+                ? Cipher.getInstance(AES_CBC_NO_PADDING, provider)
+                : Cipher.getInstance(AES_CBC_NO_PADDING);
+    }
+
+    Mac newMac() throws GeneralSecurityException {
+        return provider != null
+                ? Mac.getInstance(HMAC_SHA_256, provider)
+                : Mac.getInstance(HMAC_SHA_256);
+    }
+
+    /**
+     * Measures both providers once per start, see {@link AesCryptoBenchmark}.
+     */
+    @Synchronized
+    private static CryptoProvider fastestProvider() {
+        if (fastestProvider == null) {
+            if (!Conscrypt.isAvailable()) {
+                fastestProvider = CryptoProvider.JDK;
+            } else {
+                Map<CryptoProvider, Double> throughput = AesCryptoBenchmark.run(AesCryptoBenchmark.SHORT_RUN);
+                fastestProvider = throughput.getOrDefault(CryptoProvider.CONSCRYPT, 0.0)
+                        > throughput.getOrDefault(CryptoProvider.JDK, 0.0)
+                        ? CryptoProvider.CONSCRYPT
+                        : CryptoProvider.JDK;
+            }
+            log.atInfo().log("Using {} provider for AES.", fastestProvider);
+        }
+        return fastestProvider;
+    }
+}
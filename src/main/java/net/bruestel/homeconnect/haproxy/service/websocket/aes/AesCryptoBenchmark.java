@@ -0,0 +1,106 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.model.CryptoProvider;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the throughput of the AES crypto providers for a full frame round trip (decrypt, verify, encrypt, sign)
+ * on the frame sizes of a typical session: mostly small requests and notifications, few large description and
+ * value lists.
+ * <p>
+ * Run with {@code java -cp ... AesCryptoBenchmark [millis per provider]}.
+ */
+@Slf4j
+public class AesCryptoBenchmark {
+    static final Duration SHORT_RUN = Duration.ofMillis(200);
+
+    // plaintext size and share of frames
+    private static final int[] FRAME_SIZES = { 96, 192, 384, 1024, 4096, 32768 };
+    private static final int[] FRAME_WEIGHTS = { 30, 30, 20, 12, 6, 2 };
+    private static final int SAMPLE_COUNT = 100;
+
+    private AesCryptoBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        var duration = args.length > 0 ? Duration.ofMillis(Long.parseLong(args[0])) : Duration.ofSeconds(3);
+        run(duration).forEach((cryptoProvider, megabytesPerSecond) ->
+                System.out.printf("%-10s %8.1f MB/s%n", cryptoProvider, megabytesPerSecond));
+    }
+
+    /**
+     * @return MB/s per available provider
+     */
+    public static Map<CryptoProvider, Double> run(Duration duration) {
+        var samples = samples();
+        var throughput = new EnumMap<CryptoProvider, Double>(CryptoProvider.class);
+        for (CryptoProvider cryptoProvider : new CryptoProvider[] { CryptoProvider.JDK, CryptoProvider.CONSCRYPT }) {
+            var aesCrypto = AesCrypto.of(cryptoProvider);
+            if (aesCrypto.getCryptoProvider() != cryptoProvider) {
+                continue;
+            }
+            try {
+                // warm up, then measure
+                measure(aesCrypto, samples, duration.dividedBy(4));
+                throughput.put(cryptoProvider, measure(aesCrypto, samples, duration));
+            } catch (GeneralSecurityException | RuntimeException e) {
+                log.atWarn().log("AES benchmark of {} failed: {}", cryptoProvider, e.getMessage());
+            }
+        }
+        log.atDebug().log("AES crypto throughput (MB/s): {}", throughput);
+        return throughput;
+    }
+
+    private static double measure(AesCrypto aesCrypto, byte[][] samples, Duration duration)
+            throws GeneralSecurityException {
+        var transport = new AesTransport(null, new byte[32], new byte[16], aesCrypto, null);
+        // the appliance, the app side and the appliance side of the proxy
+        var appliance = transport.newApplianceCodec();
+        var appCodec = transport.newAppCodec();
+        var applianceCodec = transport.newApplianceCodec();
+
+        long bytes = 0;
+        var start = System.nanoTime();
+        var end = start + duration.toNanos();
+        var i = 0;
+        while (System.nanoTime() < end) {
+            var plaintext = samples[i++ % samples.length];
+            var frame = appCodec.open(appliance.seal(plaintext));
+            // re-encryption is the expensive path of the proxy
+            applianceCodec.seal(frame.getPayload());
+            bytes += plaintext.length;
+        }
+        return bytes / 1_000_000.0 / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private static byte[][] samples() {
+        var random = new Random(SAMPLE_COUNT);
+        var totalWeight = 0;
+        for (int weight : FRAME_WEIGHTS) {
+            totalWeight += weight;
+        }
+
+        var samples = new byte[SAMPLE_COUNT][];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            var pick = random.nextInt(totalWeight);
+            var size = 0;
+            for (int j = 0; j < FRAME_SIZES.length; j++) {
+                pick -= FRAME_WEIGHTS[j];
+                if (pick < 0) {
+                    size = FRAME_SIZES[j];
+                    break;
+                }
+            }
+            samples[i] = new byte[size];
+            random.nextBytes(samples[i]);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,19 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.ReceivedFrame;
+
+/**
+ * A received AES frame with its plaintext and the chain state it was encrypted on.
+ */
+@Value
+class AesFrame implements ReceivedFrame {
+    byte[] data;
+    byte[] payload;
+    // last cipher block and HMAC of the stream before this frame
+    byte[] previousChainBlock;
+    byte[] previousHmac;
+    // the HMAC matched and the padding was valid
+    boolean authenticated;
+}
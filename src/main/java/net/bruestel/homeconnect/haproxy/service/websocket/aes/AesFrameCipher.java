@@ -0,0 +1,167 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * One direction of an AES WebSocket session: the CBC stream over all frames and the HMAC chain.
+ * <p>
+ * A frame consists of the CBC encrypted, padded message followed by the first 16 bytes of
+ * {@code HMAC-SHA256(iv | direction | previous HMAC | encrypted message)}.
+ * <p>
+ * Frames are relayed unchanged as long as the outbound stream is on the same chain state as the sender of the
+ * frame. Once a frame was dropped, altered or originated by the proxy, the stream is re-encrypted.
+ */
+@Slf4j
+class AesFrameCipher {
+    static final byte APP_DIRECTION = 0x45;
+    static final byte APPLIANCE_DIRECTION = 0x43;
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int HMAC_SIZE = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int mode;
+    private final SecretKeySpec keySpec;
+    private final byte[] iv;
+    private final byte direction;
+    private final Cipher cipher;
+    private final Mac mac;
+
+    private final byte[] chainBlock;
+    private final byte[] lastHmac = new byte[HMAC_SIZE];
+    // the cipher has not seen the relayed frames and must be initialized with the chain block again
+    private boolean cipherStale;
+
+    AesFrameCipher(AesCrypto aesCrypto, int mode, SecretKeySpec keySpec, SecretKeySpec macKeySpec, byte[] iv,
+                   byte direction) throws GeneralSecurityException {
+        this.mode = mode;
+        this.keySpec = keySpec;
+        this.iv = iv;
+        this.direction = direction;
+        this.chainBlock = iv.clone();
+        this.cipher = aesCrypto.newCipher();
+        this.cipher.init(mode, keySpec, new IvParameterSpec(iv));
+        this.mac = aesCrypto.newMac();
+        this.mac.init(macKeySpec);
+    }
+
+    /**
+     * Verifies and decrypts a received frame.
+     */
+    synchronized AesFrame open(byte[] frame) throws GeneralSecurityException {
+        return open(frame, true);
+    }
+
+    /**
+     * Verifies and decrypts a received frame, a frame that fails verification is still decrypted.
+     *
+     * @param logFailures {@code false} if the caller reports HMAC and padding failures itself, see
+     *                    {@link AesFrame#isAuthenticated()}
+     */
+    synchronized AesFrame open(byte[] frame, boolean logFailures) throws GeneralSecurityException {
+        checkMode(Cipher.DECRYPT_MODE);
+        var length = frame.length - HMAC_SIZE;
+        if (length <= 0 || length % BLOCK_SIZE != 0) {
+            throw new GeneralSecurityException("Invalid frame length: " + frame.length);
+        }
+
+        var previousChainBlock = chainBlock.clone();
+        var previousHmac = lastHmac.clone();
+        var hmac = hmac(frame, length);
+        var authenticated = Arrays.equals(hmac, 0, HMAC_SIZE, frame, length, frame.length);
+        if (!authenticated && logFailures) {
+            log.error("HMAC failure! received={} ourHmac={}, msgLength={}",
+                    Hex.encodeHexString(Arrays.copyOfRange(frame, length, frame.length)),
+                    Hex.encodeHexString(hmac), frame.length);
+        }
+        advance(frame, length);
+
+        // CBC, so the last block of the previous frame is mixed in
+        var padded = cipher.update(frame, 0, length);
+        var paddingLength = padded[padded.length - 1] & 0xFF;
+        if (paddingLength > padded.length) {
+            if (logFailures) {
+                log.error("Padding error! {}", Hex.encodeHexString(padded));
+            }
+            paddingLength = 0;
+            authenticated = false;
+        }
+        log.trace("Padding length={}", paddingLength);
+
+        return new AesFrame(frame, Arrays.copyOf(padded, padded.length - paddingLength),
+                previousChainBlock, previousHmac, authenticated);
+    }
+
+    /**
+     * @return the received frame if this stream is on the chain state the frame was encrypted on and the plaintext
+     * is unchanged, otherwise the re-encrypted plaintext
+     */
+    synchronized byte[] seal(AesFrame frame, byte[] plaintext) throws GeneralSecurityException {
+        checkMode(Cipher.ENCRYPT_MODE);
+        if (plaintext == frame.getPayload()
+                && Arrays.equals(chainBlock, frame.getPreviousChainBlock())
+                && Arrays.equals(lastHmac, frame.getPreviousHmac())) {
+            var length = frame.getData().length - HMAC_SIZE;
+            advance(frame.getData(), length);
+            cipherStale = true;
+            return frame.getData();
+        }
+        return seal(plaintext);
+    }
+
+    /**
+     * Encrypts a message of the proxy.
+     */
+    synchronized byte[] seal(byte[] plaintext) throws GeneralSecurityException {
+        checkMode(Cipher.ENCRYPT_MODE);
+        // 0x00, random bytes, padding length; at least two bytes
+        var paddingLength = BLOCK_SIZE - plaintext.length % BLOCK_SIZE;
+        if (paddingLength == 1) {
+            paddingLength += BLOCK_SIZE;
+        }
+        var padded = Arrays.copyOf(plaintext, plaintext.length + paddingLength);
+        var random = new byte[paddingLength - 2];
+        RANDOM.nextBytes(random);
+        System.arraycopy(random, 0, padded, plaintext.length + 1, random.length);
+        padded[padded.length - 1] = (byte) paddingLength;
+
+        if (cipherStale) {
+            cipher.init(mode, keySpec, new IvParameterSpec(chainBlock));
+            cipherStale = false;
+        }
+        var frame = Arrays.copyOf(cipher.update(padded), padded.length + HMAC_SIZE);
+        System.arraycopy(hmac(frame, padded.length), 0, frame, padded.length, HMAC_SIZE);
+        advance(frame, padded.length);
+        return frame;
+    }
+
+    private void advance(byte[] frame, int length) {
+        System.arraycopy(frame, length - BLOCK_SIZE, chainBlock, 0, BLOCK_SIZE);
+        System.arraycopy(frame, length, lastHmac, 0, HMAC_SIZE);
+    }
+
+    private byte[] hmac(byte[] frame, int length) {
+        mac.update(iv);
+        mac.update(direction);
+        mac.update(lastHmac);
+        mac.update(frame, 0, length);
+        return Arrays.copyOf(mac.doFinal(), HMAC_SIZE);
+    }
+
+    private void checkMode(int expectedMode) {
+        if (mode != expectedMode) {
+            throw new IllegalStateException("Unexpected cipher mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the frames of one received AES stream as they came off the wire, so the stream can be decrypted again
+ * later (see {@link AesOfflineDecryptor}). A file holds exactly one CBC/HMAC chain. All numbers are big-endian:
+ * <pre>
+ * header: magic HCAF, version (int), direction (byte)
+ * frame:  timestamp in epoch nanos (long), length (int), frame
+ * </pre>
+ * The file is created with the first frame. A file that was not closed ends with a truncated frame at most.
+ */
+@Slf4j
+class AesFrameRecorder {
+    static final int MAGIC = 0x48434146; // HCAF
+    static final int FORMAT_VERSION = 1;
+    static final String FILE_EXTENSION = ".frames";
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final AtomicLong STREAM_COUNTER = new AtomicLong();
+
+    private final Path directory;
+    private final byte direction;
+    private final long epochNanosOffset;
+    private Path file;
+    private DataOutputStream out;
+    private boolean closed;
+
+    AesFrameRecorder(Path directory, byte direction) {
+        this.directory = directory;
+        this.direction = direction;
+        var now = Instant.now();
+        epochNanosOffset = TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano() - System.nanoTime();
+    }
+
+    synchronized void record(byte[] frame) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (out == null) {
+                open();
+            }
+            out.writeLong(epochNanosOffset + System.nanoTime());
+            out.writeInt(frame.length);
+            out.write(frame);
+        } catch (IOException e) {
+            log.atError().log("Error writing frame capture {}, recording stopped: {}", file, e.getMessage());
+            close();
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.atError().log("Error closing frame capture {}: {}", file, e.getMessage());
+        }
+        out = null;
+    }
+
+    private void open() throws IOException {
+        file = directory.resolve(LocalDateTime.now().format(FILE_TIMESTAMP) + "-" + STREAM_COUNTER.incrementAndGet()
+                + "-" + (direction == AesFrameCipher.APP_DIRECTION ? "app" : "appliance") + FILE_EXTENSION);
+        Files.createDirectories(directory);
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeByte(direction);
+        log.atInfo().log("Recording AES frames to {}", file);
+    }
+}
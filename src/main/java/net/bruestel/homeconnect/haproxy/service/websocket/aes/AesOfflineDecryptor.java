@@ -0,0 +1,278 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.model.ProxySettings;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Decrypts recorded AES streams (see {@link AesFrameRecorder}) to NDJSON, one line per frame:
+ * <pre>
+ * {"chain":"...-app.frames","sender":"APP","frame":0,"timestamp":"...","authenticated":true,"message":{...}}
+ * </pre>
+ * Every file is one CBC/HMAC chain and is decrypted in order, the chains of all sessions and directions are
+ * decrypted in parallel on a fork/join pool. The lines of a chain are written in order, in chunks of about 1 MiB,
+ * chunks of different chains are interleaved.
+ * <p>
+ * Run with {@code java -cp ... AesOfflineDecryptor <key> <iv> <output.ndjson> <frame files or directories>...}.
+ */
+@Slf4j
+public class AesOfflineDecryptor {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int OUTPUT_CHUNK_SIZE = 1024 * 1024;
+    private static final int INPUT_BUFFER_SIZE = 256 * 1024;
+    // magic, format version and direction
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Byte.BYTES;
+    // well above the largest message the proxy accepts, a longer frame means a corrupt file
+    private static final int MAX_FRAME_SIZE = 8 * 1024 * 1024;
+
+    private final AesTransport transport;
+    private final int parallelism;
+
+    /**
+     * @param parallelism number of chains decrypted at the same time
+     */
+    public AesOfflineDecryptor(String base64EncodedKey, String base64EncodedInitializationVector,
+                               AesCrypto aesCrypto, int parallelism) {
+        this.transport = new AesTransport(null, base64EncodedKey, base64EncodedInitializationVector, aesCrypto);
+        this.parallelism = parallelism;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: AesOfflineDecryptor <key> <iv> <output.ndjson> <frame files or directories>...");
+            System.exit(2);
+        }
+
+        var frameFiles = new ArrayList<Path>();
+        for (int i = 3; i < args.length; i++) {
+            frameFiles.addAll(frameFiles(Path.of(args[i])));
+        }
+        var aesCrypto = AesCrypto.of(ProxySettings.fromSystemProperties().getAesCryptoProvider());
+        var decryptor = new AesOfflineDecryptor(args[0], args[1], aesCrypto,
+                Runtime.getRuntime().availableProcessors());
+        var result = decryptor.decrypt(frameFiles, Path.of(args[2]));
+        System.out.printf("%d chains (%d failed), %d frames (%d not authenticated), %.1f MB in %d ms%n",
+                result.getChains(), result.getFailedChains(), result.getFrames(), result.getUnauthenticatedFrames(),
+                result.getBytes() / 1_000_000.0, result.getMillis());
+    }
+
+    /**
+     * @return the file itself or the frame files of a directory
+     */
+    public static List<Path> frameFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(AesFrameRecorder.FILE_EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public Result decrypt(List<Path> frameFiles, Path output) throws IOException {
+        var start = System.nanoTime();
+        var statistics = new Statistics();
+        try (var out = new BufferedOutputStream(Files.newOutputStream(output), OUTPUT_CHUNK_SIZE)) {
+            // the longest chains first, so no single chain is left running at the end
+            var tasks = frameFiles.stream()
+                    .sorted(Comparator.comparingLong(AesOfflineDecryptor::size).reversed())
+                    .map(file -> new ChainTask(transport, file, out, statistics))
+                    .toList();
+            var pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        return new Result(frameFiles.size(), statistics.failedChains.sum(), statistics.frames.sum(),
+                statistics.unauthenticatedFrames.sum(), statistics.bytes.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Value
+    public static class Result {
+        long chains;
+        long failedChains;
+        long frames;
+        long unauthenticatedFrames;
+        // ciphertext bytes
+        long bytes;
+        long millis;
+    }
+
+    private static class Statistics {
+        private final LongAdder failedChains = new LongAdder();
+        private final LongAdder frames = new LongAdder();
+        private final LongAdder unauthenticatedFrames = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    /**
+     * Decrypts one chain, the frames must be processed in order.
+     */
+    private static final class ChainTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient AesTransport transport;
+        private final transient Path file;
+        private final transient OutputStream out;
+        private final transient Statistics statistics;
+
+        ChainTask(AesTransport transport, Path file, OutputStream out, Statistics statistics) {
+            this.transport = transport;
+            this.file = file;
+            this.out = out;
+            this.statistics = statistics;
+        }
+
+        @Override
+        protected void compute() {
+            var chain = file.getFileName().toString();
+            var lines = new ByteArrayOutputStream(OUTPUT_CHUNK_SIZE + OUTPUT_CHUNK_SIZE / 4);
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), INPUT_BUFFER_SIZE));
+                 var json = JSON_FACTORY.createGenerator(lines)) {
+                if (in.readInt() != AesFrameRecorder.MAGIC || in.readInt() != AesFrameRecorder.FORMAT_VERSION) {
+                    throw new IOException("Not a frame capture of format version " + AesFrameRecorder.FORMAT_VERSION);
+                }
+                // one line per frame, no separator in between
+                json.setRootValueSeparator(null);
+                var direction = in.readByte();
+                var sender = direction == AesFrameCipher.APP_DIRECTION ? Sender.APP : Sender.HOME_APPLIANCE;
+                var cipher = transport.newDecryptCipher(direction);
+                var remaining = Files.size(file) - HEADER_SIZE;
+
+                for (long index = 0; ; index++) {
+                    long timestamp;
+                    byte[] data;
+                    try {
+                        timestamp = in.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    try {
+                        var length = in.readInt();
+                        remaining -= Long.BYTES + Integer.BYTES;
+                        if (length < 0 || length > MAX_FRAME_SIZE) {
+                            throw new IOException("Invalid length " + length + " of frame " + index);
+                        }
+                        if (length > remaining) {
+                            // a capture that was not closed, the rest of the frame was never written
+                            throw new EOFException();
+                        }
+                        data = new byte[length];
+                        in.readFully(data);
+                        remaining -= length;
+                    } catch (EOFException e) {
+                        log.atWarn().log("Frame capture {} ends with a truncated frame", file);
+                        break;
+                    }
+
+                    json.writeStartObject();
+                    json.writeStringField("chain", chain);
+                    json.writeStringField("sender", sender.name());
+                    json.writeNumberField("frame", index);
+                    json.writeStringField("timestamp", Instant.ofEpochSecond(0, timestamp).toString());
+                    try {
+                        var frame = cipher.open(data, false);
+                        json.writeBooleanField("authenticated", frame.isAuthenticated());
+                        writeMessage(json, frame.getPayload());
+                        if (!frame.isAuthenticated()) {
+                            statistics.unauthenticatedFrames.increment();
+                        }
+                    } catch (GeneralSecurityException e) {
+                        json.writeBooleanField("authenticated", false);
+                        json.writeStringField("error", e.getMessage());
+                        statistics.unauthenticatedFrames.increment();
+                    }
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                    statistics.frames.increment();
+                    statistics.bytes.add(data.length);
+
+                    if (lines.size() >= OUTPUT_CHUNK_SIZE) {
+                        json.flush();
+                        writeChunk(lines);
+                    }
+                }
+                json.flush();
+                writeChunk(lines);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                log.atError().log("Error decrypting frame capture {}: {}", file, e.getMessage());
+                statistics.failedChains.increment();
+            }
+        }
+
+        private void writeChunk(ByteArrayOutputStream lines) throws IOException {
+            synchronized (out) {
+                lines.writeTo(out);
+            }
+            lines.reset();
+        }
+    }
+
+    // a JSON payload is embedded as is, anything else as a string
+    private static void writeMessage(JsonGenerator json, byte[] payload) throws IOException {
+        if (isJsonObject(payload)) {
+            json.writeFieldName("message");
+            json.writeRawValue(new String(payload, StandardCharsets.UTF_8));
+        } else {
+            json.writeStringField("payload", new String(payload, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean isJsonObject(byte[] payload) {
+        try (var parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
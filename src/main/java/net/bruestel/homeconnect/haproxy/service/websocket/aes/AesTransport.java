@@ -0,0 +1,146 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.aes;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.Transport;
+import net.bruestel.homeconnect.haproxy.service.websocket.TransportCodec;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Plain WebSocket connections with AES-CBC encrypted, HMAC chained binary frames. The proxy terminates both
+ * connections, so each of the four streams (app to proxy, proxy to appliance, appliance to proxy, proxy to app)
+ * has its own cipher and HMAC chain.
+ */
+@Slf4j
+public class AesTransport implements Transport {
+    private static final String AES = "AES";
+    private static final String ENC = "ENC";
+    private static final String MAC = "MAC";
+
+    @Getter
+    private final URI homeApplianceWebsocketUri;
+    private final AesCrypto aesCrypto;
+    private final byte[] iv;
+    private final SecretKeySpec keySpec;
+    private final SecretKeySpec macKeySpec;
+    private final LongAdder relayedFrames = new LongAdder();
+    private final LongAdder reencryptedFrames = new LongAdder();
+    // received frames are recorded here, null disables it
+    private final Path frameCaptureDirectory;
+
+    public AesTransport(URI homeApplianceWebsocketUri,
+                        String base64EncodedKey,
+                        String base64EncodedInitializationVector,
+                        AesCrypto aesCrypto) {
+        this(homeApplianceWebsocketUri, base64EncodedKey, base64EncodedInitializationVector, aesCrypto, null);
+    }
+
+    public AesTransport(URI homeApplianceWebsocketUri,
+                        String base64EncodedKey,
+                        String base64EncodedInitializationVector,
+                        AesCrypto aesCrypto,
+                        Path frameCaptureDirectory) {
+        this(homeApplianceWebsocketUri,
+                Base64.getUrlDecoder().decode(base64EncodedKey),
+                Base64.getUrlDecoder().decode(base64EncodedInitializationVector),
+                aesCrypto,
+                frameCaptureDirectory);
+    }
+
+    AesTransport(URI homeApplianceWebsocketUri, byte[] key, byte[] iv, AesCrypto aesCrypto,
+                 Path frameCaptureDirectory) {
+        this.homeApplianceWebsocketUri = homeApplianceWebsocketUri;
+        this.aesCrypto = aesCrypto;
+        this.iv = iv;
+        this.frameCaptureDirectory = frameCaptureDirectory;
+        try {
+            this.keySpec = new SecretKeySpec(hmac(key, ENC.getBytes(StandardCharsets.UTF_8)), AES);
+            this.macKeySpec = new SecretKeySpec(hmac(key, MAC.getBytes(StandardCharsets.UTF_8)),
+                    AesCrypto.HMAC_SHA_256);
+        } catch (GeneralSecurityException e) {
+            log.atError().log("Error initializing AES", e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public ServerConnector newServerConnector(Server server, int port) {
+        var connector = new ServerConnector(server);
+        connector.setPort(port);
+        return connector;
+    }
+
+    @Override
+    public void updateServerConnector(ServerConnector connector) {
+        // plain connector, the secrets are only used by the codecs
+    }
+
+    @Override
+    public HttpClient newHttpClient() {
+        return new HttpClient();
+    }
+
+    @Override
+    public TransportCodec newAppCodec() {
+        return newCodec(AesFrameCipher.APP_DIRECTION, AesFrameCipher.APPLIANCE_DIRECTION);
+    }
+
+    @Override
+    public TransportCodec newApplianceCodec() {
+        return newCodec(AesFrameCipher.APPLIANCE_DIRECTION, AesFrameCipher.APP_DIRECTION);
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        var statistics = new LinkedHashMap<String, Long>();
+        statistics.put("Relayed frames", relayedFrames.sum());
+        statistics.put("Re-encrypted frames", reencryptedFrames.sum());
+        return statistics;
+    }
+
+    /**
+     * @return a stream that decrypts the frames sent in the given direction, e.g. to decrypt recorded frames
+     */
+    AesFrameCipher newDecryptCipher(byte direction) throws GeneralSecurityException {
+        return new AesFrameCipher(aesCrypto, Cipher.DECRYPT_MODE, keySpec, macKeySpec, iv, direction);
+    }
+
+    private TransportCodec newCodec(byte receiveDirection, byte sendDirection) {
+        try {
+            return new AesCodec(
+                    new AesFrameCipher(aesCrypto, Cipher.DECRYPT_MODE, keySpec, macKeySpec, iv, receiveDirection),
+                    new AesFrameCipher(aesCrypto, Cipher.ENCRYPT_MODE, keySpec, macKeySpec, iv, sendDirection),
+                    relayedFrames,
+                    reencryptedFrames,
+                    frameCaptureDirectory != null
+                            ? new AesFrameRecorder(frameCaptureDirectory, receiveDirection)
+                            : null);
+        } catch (GeneralSecurityException e) {
+            log.atError().log("Error initializing AES", e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, byte[] msg) throws GeneralSecurityException {
+        var mac = Mac.getInstance(AesCrypto.HMAC_SHA_256);
+        mac.init(new SecretKeySpec(key, AesCrypto.HMAC_SHA_256));
+        return mac.doFinal(msg);
+    }
+}
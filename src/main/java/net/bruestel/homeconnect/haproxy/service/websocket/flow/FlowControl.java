@@ -0,0 +1,111 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.flow;
+
+import lombok.Getter;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.model.ProxySettings;
+import net.bruestel.homeconnect.haproxy.service.websocket.model.SlowConsumerPolicy;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the outbound queues of all sessions of a proxy. A session whose queue grows over the high water mark
+ * suspends reading on the sessions that feed it, until the queue is drained below the low water mark. A consumer that
+ * stays over the high water mark longer than the slow consumer timeout is handled by the {@link SlowConsumerPolicy}.
+ */
+public class FlowControl {
+    @Getter
+    private volatile long highWaterMark;
+    @Getter
+    private volatile long lowWaterMark;
+    @Getter
+    private volatile Duration slowConsumerTimeout;
+    @Getter
+    private volatile SlowConsumerPolicy slowConsumerPolicy;
+
+    private final Set<OutboundQueue> queues = ConcurrentHashMap.newKeySet();
+    private final LongAccumulator peakQueuedBytes = new LongAccumulator(Math::max, 0);
+    private final LongAdder suspendedReads = new LongAdder();
+    private final LongAdder stalledNanos = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+
+    public FlowControl(ProxySettings settings) {
+        apply(settings);
+    }
+
+    /**
+     * Applies new limits to all queues, a queue over the new high water mark suspends reading with its next frame.
+     */
+    public void reconfigure(ProxySettings settings) {
+        apply(settings);
+    }
+
+    private void apply(ProxySettings settings) {
+        this.highWaterMark = Math.max(1, settings.getOutboundHighWaterMark());
+        this.lowWaterMark = Math.max(0, Math.min(settings.getOutboundLowWaterMark(), highWaterMark));
+        this.slowConsumerTimeout = settings.getSlowConsumerTimeout();
+        this.slowConsumerPolicy = settings.getSlowConsumerPolicy();
+    }
+
+    /**
+     * @param closeAction closes the session, if the {@link SlowConsumerPolicy#CLOSE} policy is applied
+     */
+    public OutboundQueue newQueue(String name, ScheduledExecutorService scheduler, Runnable closeAction) {
+        return new OutboundQueue(this, name, scheduler, closeAction);
+    }
+
+    public Map<String, Long> getStatistics() {
+        long queuedBytes = 0;
+        long queuedFrames = 0;
+        for (OutboundQueue queue : queues) {
+            queuedBytes += queue.getQueuedBytes();
+            queuedFrames += queue.getQueuedFrames();
+        }
+
+        var statistics = new LinkedHashMap<String, Long>();
+        statistics.put("Outbound queued bytes", queuedBytes);
+        statistics.put("Outbound queued frames", queuedFrames);
+        statistics.put("Outbound queue peak (bytes)", peakQueuedBytes.get());
+        statistics.put("Suspended reads", suspendedReads.sum());
+        statistics.put("Stalled time (ms)", TimeUnit.NANOSECONDS.toMillis(stalledNanos.sum()));
+        statistics.put("Slow consumers", slowConsumers.sum());
+        statistics.put("Dropped frames (slow consumer)", droppedFrames.sum());
+        return statistics;
+    }
+
+    void register(OutboundQueue queue) {
+        queues.add(queue);
+    }
+
+    void unregister(OutboundQueue queue) {
+        queues.remove(queue);
+    }
+
+    void queued(long queuedBytes) {
+        peakQueuedBytes.accumulate(queuedBytes);
+    }
+
+    void suspendedRead() {
+        suspendedReads.increment();
+    }
+
+    void stalled(long nanos) {
+        stalledNanos.add(nanos);
+    }
+
+    void slowConsumer() {
+        slowConsumers.increment();
+    }
+
+    void droppedFrame() {
+        droppedFrames.increment();
+    }
+}
@@ -0,0 +1,175 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.flow;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts the frames of one session that are handed to the socket, but not written yet. Readers feeding the session
+ * wait via {@link #whenWritable(Runnable)} while the queue is over the high water mark.
+ */
+@Slf4j
+public class OutboundQueue {
+    private final FlowControl flowControl;
+    private final String name;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable closeAction;
+
+    private final Object lock = new Object();
+    private final List<Runnable> waiters = new ArrayList<>();
+    private long queuedBytes;
+    private long queuedFrames;
+    private long stallStarted;
+    private boolean stalled;
+    private boolean dropping;
+    private boolean closed;
+
+    OutboundQueue(FlowControl flowControl, String name, ScheduledExecutorService scheduler, Runnable closeAction) {
+        this.flowControl = flowControl;
+        this.name = name;
+        this.scheduler = scheduler;
+        this.closeAction = closeAction;
+    }
+
+    public void open() {
+        flowControl.register(this);
+    }
+
+    /**
+     * @return {@code false} if the next frame has to be dropped, because the consumer is stuck
+     */
+    public boolean admit() {
+        synchronized (lock) {
+            if (dropping) {
+                flowControl.droppedFrame();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public void enqueued(int size) {
+        synchronized (lock) {
+            queuedBytes += size;
+            queuedFrames++;
+            flowControl.queued(queuedBytes);
+            if (stalled || closed || queuedBytes <= flowControl.getHighWaterMark()) {
+                return;
+            }
+
+            stalled = true;
+            stallStarted = System.nanoTime();
+            log.atDebug().log("Outbound queue of {} is over the high water mark ({} bytes).", name, queuedBytes);
+            scheduleStallCheck(stallStarted);
+        }
+    }
+
+    public void dequeued(int size) {
+        List<Runnable> resumed;
+        synchronized (lock) {
+            queuedBytes -= size;
+            queuedFrames--;
+            if (!stalled || queuedBytes > flowControl.getLowWaterMark()) {
+                return;
+            }
+
+            stalled = false;
+            dropping = false;
+            flowControl.stalled(System.nanoTime() - stallStarted);
+            log.atDebug().log("Outbound queue of {} is drained ({} bytes).", name, queuedBytes);
+            resumed = drainWaiters();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    /**
+     * Runs the action now and returns {@code true}, if frames can be queued. Otherwise, the action is run as soon as
+     * the queue is drained.
+     */
+    public boolean whenWritable(Runnable action) {
+        synchronized (lock) {
+            if (!stalled || dropping || closed) {
+                return true;
+            }
+            waiters.add(action);
+            flowControl.suspendedRead();
+            return false;
+        }
+    }
+
+    public void close() {
+        List<Runnable> resumed;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (stalled) {
+                stalled = false;
+                flowControl.stalled(System.nanoTime() - stallStarted);
+            }
+            resumed = drainWaiters();
+        }
+        flowControl.unregister(this);
+        resumed.forEach(Runnable::run);
+    }
+
+    public long getQueuedBytes() {
+        synchronized (lock) {
+            return queuedBytes;
+        }
+    }
+
+    public long getQueuedFrames() {
+        synchronized (lock) {
+            return queuedFrames;
+        }
+    }
+
+    private void scheduleStallCheck(long started) {
+        var timeout = flowControl.getSlowConsumerTimeout();
+        if (timeout.isZero() || timeout.isNegative()) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> stallCheck(started), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // session already closed
+        }
+    }
+
+    private void stallCheck(long started) {
+        List<Runnable> resumed;
+        synchronized (lock) {
+            if (!stalled || closed || stallStarted != started) {
+                return;
+            }
+
+            flowControl.slowConsumer();
+            log.atWarn()
+                    .addArgument(name)
+                    .addArgument(queuedBytes)
+                    .addArgument(flowControl.getSlowConsumerPolicy())
+                    .log("{} does not consume its messages ({} bytes queued), policy: {}.");
+            switch (flowControl.getSlowConsumerPolicy()) {
+                case DROP -> {
+                    dropping = true;
+                    resumed = drainWaiters();
+                }
+                case CLOSE -> resumed = List.of(closeAction);
+                default -> resumed = List.of();
+            }
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    private List<Runnable> drainWaiters() {
+        var drained = new ArrayList<>(waiters);
+        waiters.clear();
+        return drained;
+    }
+}
@@ -0,0 +1,10 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.model;
+
+public enum CryptoProvider {
+    // fastest provider on this platform, measured once per start
+    AUTO,
+    // default JCE provider with the AES-NI intrinsics of the JVM
+    JDK,
+    // BoringSSL via the bundled Conscrypt provider
+    CONSCRYPT
+}
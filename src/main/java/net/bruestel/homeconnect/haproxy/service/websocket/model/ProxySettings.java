@@ -0,0 +1,135 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+@Slf4j
+@Value
+@Builder(toBuilder = true)
+public class ProxySettings {
+    public static final String MULTIPLEX_PROPERTY = "haproxy.multiplex";
+    public static final String COALESCING_WINDOW_PROPERTY = "haproxy.coalescingWindowMillis";
+    public static final String STATE_API_PORT_PROPERTY = "haproxy.stateApiPort";
+    public static final String RESPONSE_CACHE_PROPERTY = "haproxy.responseCache";
+    public static final String AES_CRYPTO_PROVIDER_PROPERTY = "haproxy.aesCryptoProvider";
+    public static final String OUTBOUND_HIGH_WATER_MARK_PROPERTY = "haproxy.outboundHighWaterMark";
+    public static final String OUTBOUND_LOW_WATER_MARK_PROPERTY = "haproxy.outboundLowWaterMark";
+    public static final String SLOW_CONSUMER_TIMEOUT_PROPERTY = "haproxy.slowConsumerTimeoutMillis";
+    public static final String SLOW_CONSUMER_POLICY_PROPERTY = "haproxy.slowConsumerPolicy";
+    public static final String RECONNECT_PROPERTY = "haproxy.reconnect";
+    public static final String RECONNECT_TIMEOUT_PROPERTY = "haproxy.reconnectTimeoutMillis";
+    public static final String RECONNECT_BUFFER_SIZE_PROPERTY = "haproxy.reconnectBufferSize";
+    public static final String FRAME_CAPTURE_PROPERTY = "haproxy.frameCapture";
+
+    private static final long DEFAULT_OUTBOUND_HIGH_WATER_MARK = 1024 * 1024;
+    private static final long DEFAULT_OUTBOUND_LOW_WATER_MARK = 256 * 1024;
+    private static final long DEFAULT_SLOW_CONSUMER_TIMEOUT_MILLIS = 30_000;
+    private static final long DEFAULT_RECONNECT_TIMEOUT_MILLIS = 60_000;
+    private static final int DEFAULT_RECONNECT_BUFFER_SIZE = 64;
+
+    // share one appliance connection between all app sessions
+    boolean multiplex;
+    // identical GET requests within this window are answered by one appliance request, zero disables it
+    @Builder.Default
+    Duration coalescingWindow = Duration.ZERO;
+    // loopback port of the appliance state API, zero disables it
+    int stateApiPort;
+    // GET responses of these resources are answered from the cache for the given time to live
+    @Builder.Default
+    Map<String, Duration> responseCacheTtls = Map.of();
+    // provider of AES and HMAC in AES mode
+    @Builder.Default
+    CryptoProvider aesCryptoProvider = CryptoProvider.AUTO;
+    // reading is suspended while a session has more bytes than this waiting to be sent ...
+    @Builder.Default
+    long outboundHighWaterMark = DEFAULT_OUTBOUND_HIGH_WATER_MARK;
+    // ... and resumed once it is drained below this
+    @Builder.Default
+    long outboundLowWaterMark = DEFAULT_OUTBOUND_LOW_WATER_MARK;
+    // a session over the high water mark for longer is a slow consumer, zero disables it
+    @Builder.Default
+    Duration slowConsumerTimeout = Duration.ofMillis(DEFAULT_SLOW_CONSUMER_TIMEOUT_MILLIS);
+    @Builder.Default
+    SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.CLOSE;
+    // reconnect to the appliance and keep the app session up, if the appliance drops the connection
+    boolean reconnect;
+    // the app session is closed, if the appliance is not back in time
+    @Builder.Default
+    Duration reconnectTimeout = Duration.ofMillis(DEFAULT_RECONNECT_TIMEOUT_MILLIS);
+    // app requests buffered during a reconnect
+    @Builder.Default
+    int reconnectBufferSize = DEFAULT_RECONNECT_BUFFER_SIZE;
+    // directory the received AES frames are recorded to, one file per stream, null disables it
+    Path frameCaptureDirectory;
+
+    public static ProxySettings fromSystemProperties() {
+        return ProxySettings.builder()
+                .multiplex(Boolean.getBoolean(MULTIPLEX_PROPERTY))
+                .coalescingWindow(Duration.ofMillis(Long.getLong(COALESCING_WINDOW_PROPERTY, 0L)))
+                .stateApiPort(Integer.getInteger(STATE_API_PORT_PROPERTY, 0))
+                .responseCacheTtls(parseTtls(System.getProperty(RESPONSE_CACHE_PROPERTY)))
+                .aesCryptoProvider(parseCryptoProvider(System.getProperty(AES_CRYPTO_PROVIDER_PROPERTY)))
+                .outboundHighWaterMark(Long.getLong(OUTBOUND_HIGH_WATER_MARK_PROPERTY,
+                        DEFAULT_OUTBOUND_HIGH_WATER_MARK))
+                .outboundLowWaterMark(Long.getLong(OUTBOUND_LOW_WATER_MARK_PROPERTY, DEFAULT_OUTBOUND_LOW_WATER_MARK))
+                .slowConsumerTimeout(Duration.ofMillis(Long.getLong(SLOW_CONSUMER_TIMEOUT_PROPERTY,
+                        DEFAULT_SLOW_CONSUMER_TIMEOUT_MILLIS)))
+                .slowConsumerPolicy(parseSlowConsumerPolicy(System.getProperty(SLOW_CONSUMER_POLICY_PROPERTY)))
+                .reconnect(Boolean.getBoolean(RECONNECT_PROPERTY))
+                .reconnectTimeout(Duration.ofMillis(Long.getLong(RECONNECT_TIMEOUT_PROPERTY,
+                        DEFAULT_RECONNECT_TIMEOUT_MILLIS)))
+                .reconnectBufferSize(Integer.getInteger(RECONNECT_BUFFER_SIZE_PROPERTY, DEFAULT_RECONNECT_BUFFER_SIZE))
+                .frameCaptureDirectory(StringUtils.isBlank(System.getProperty(FRAME_CAPTURE_PROPERTY))
+                        ? null
+                        : Path.of(System.getProperty(FRAME_CAPTURE_PROPERTY).trim()))
+                .build();
+    }
+
+    private static CryptoProvider parseCryptoProvider(String value) {
+        if (StringUtils.isBlank(value)) {
+            return CryptoProvider.AUTO;
+        }
+        try {
+            return CryptoProvider.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.atWarn().log("Ignoring unknown AES crypto provider: {}", value);
+            return CryptoProvider.AUTO;
+        }
+    }
+
+    private static SlowConsumerPolicy parseSlowConsumerPolicy(String value) {
+        if (StringUtils.isBlank(value)) {
+            return SlowConsumerPolicy.CLOSE;
+        }
+        try {
+            return SlowConsumerPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.atWarn().log("Ignoring unknown slow consumer policy: {}", value);
+            return SlowConsumerPolicy.CLOSE;
+        }
+    }
+
+    // "/iz/info=3600,/ci/services=600" (seconds)
+    private static Map<String, Duration> parseTtls(String value) {
+        var ttls = new LinkedHashMap<String, Duration>();
+        for (String entry : StringUtils.split(StringUtils.defaultString(value), ',')) {
+            var resource = StringUtils.substringBefore(entry, "=").trim();
+            var seconds = StringUtils.substringAfter(entry, "=").trim();
+            if (resource.isEmpty() || !StringUtils.isNumeric(seconds)) {
+                log.atWarn().log("Ignoring invalid response cache entry: {}", entry);
+                continue;
+            }
+            ttls.put(resource, Duration.ofSeconds(Long.parseLong(seconds)));
+        }
+        return Map.copyOf(ttls);
+    }
+}
@@ -0,0 +1,10 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.model;
+
+public enum SlowConsumerPolicy {
+    // keep the reading side suspended until the consumer catches up
+    WAIT,
+    // resume reading and drop the messages to the consumer until its queue is drained
+    DROP,
+    // close the consumer session
+    CLOSE
+}
@@ -0,0 +1,9 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.multiplex;
+
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+public interface MultiplexClient {
+    String getClientId();
+    void send(Message message);
+    void close();
+}
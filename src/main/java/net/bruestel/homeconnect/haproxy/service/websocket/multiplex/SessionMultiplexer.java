@@ -0,0 +1,157 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.multiplex;
+
+import lombok.Synchronized;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Shares one appliance session between several app sessions.
+ * <ul>
+ *     <li>The first app session (primary) performs the {@code /ei/initialValues} handshake, later app sessions get
+ *     the recorded handshake replayed and their answer is swallowed.</li>
+ *     <li>App requests get a msgID from one upstream sequence, responses are mapped back to the original msgID and
+ *     only delivered to the requesting app session.</li>
+ *     <li>NOTIFY messages of the appliance are broadcast, requests of the appliance go to the primary.</li>
+ * </ul>
+ */
+@Slf4j
+public class SessionMultiplexer {
+    private static final String INITIAL_VALUES_RESOURCE = "/ei/initialValues";
+    private static final String ED_MSG_ID = "edMsgID";
+    private static final int MAX_PENDING_REQUESTS = 4096;
+
+    private final MessageRewriter messageRewriter;
+    private final Consumer<Message> upstream;
+
+    private final Map<String, MultiplexClient> clients = new LinkedHashMap<>();
+    private final Set<String> handshakingClients = new HashSet<>();
+    private final LinkedHashMap<Long, PendingRequest> pendingRequests = new LinkedHashMap<>();
+
+    private Message initialValues;
+    private long nextMsgId;
+
+    public SessionMultiplexer(MessageRewriter messageRewriter, Consumer<Message> upstream) {
+        this.messageRewriter = messageRewriter;
+        this.upstream = upstream;
+    }
+
+    @Synchronized
+    public void attach(MultiplexClient client) {
+        clients.put(client.getClientId(), client);
+        log.atInfo().log("[App] Attached to shared appliance session (appSessionId={}, clients={}).",
+                client.getClientId(), clients.size());
+
+        if (clients.size() > 1 && initialValues != null) {
+            handshakingClients.add(client.getClientId());
+            client.send(initialValues);
+        }
+    }
+
+    /**
+     * @return the number of remaining app sessions
+     */
+    @Synchronized
+    public int detach(String clientId) {
+        clients.remove(clientId);
+        handshakingClients.remove(clientId);
+        pendingRequests.values().removeIf(pendingRequest -> pendingRequest.getClientId().equals(clientId));
+        log.atInfo().log("[App] Detached from shared appliance session (appSessionId={}, clients={}).",
+                clientId, clients.size());
+        return clients.size();
+    }
+
+    @Synchronized
+    public void onAppMessage(String clientId, Message message) {
+        if (!message.isRequest()) {
+            if (handshakingClients.remove(clientId) && isInitialValues(message)) {
+                // handshake was answered by the primary already
+                return;
+            }
+            if (!isPrimary(clientId)) {
+                log.atDebug().log("[App] Ignoring {} of secondary app session {}.", message.getAction(), clientId);
+                return;
+            }
+            upstream.accept(message);
+            return;
+        }
+
+        if (nextMsgId == 0) {
+            nextMsgId = message.getMsgId();
+        }
+        var upstreamMsgId = nextMsgId++;
+
+        if (pendingRequests.size() >= MAX_PENDING_REQUESTS) {
+            pendingRequests.remove(pendingRequests.keySet().iterator().next());
+        }
+        pendingRequests.put(upstreamMsgId, new PendingRequest(clientId, message.getMsgId()));
+        upstream.accept(messageRewriter.withHeader(message, message.getSid(), upstreamMsgId));
+    }
+
+    @Synchronized
+    public void onApplianceMessage(Message message) {
+        if (message.isRequest() && isInitialValues(message)) {
+            initialValues = message;
+            nextMsgId = message.toJsonNode().path("data").path(0).path(ED_MSG_ID).asLong(nextMsgId);
+        }
+
+        if (message.getAction() == Action.RESPONSE) {
+            var pendingRequest = pendingRequests.remove(message.getMsgId());
+            if (pendingRequest != null) {
+                var client = clients.get(pendingRequest.getClientId());
+                if (client != null) {
+                    client.send(messageRewriter.withHeader(message, message.getSid(), pendingRequest.getMsgId()));
+                }
+                return;
+            }
+        }
+
+        if (message.getAction() == Action.NOTIFY) {
+            for (MultiplexClient client : new ArrayList<>(clients.values())) {
+                client.send(message);
+            }
+            return;
+        }
+
+        // requests of the appliance and unknown responses
+        var primary = clients.values().stream().findFirst();
+        primary.ifPresent(client -> client.send(message));
+    }
+
+    @Synchronized
+    public void closeAll() {
+        new ArrayList<>(clients.values()).forEach(MultiplexClient::close);
+        clients.clear();
+        handshakingClients.clear();
+        pendingRequests.clear();
+    }
+
+    @Synchronized
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private boolean isPrimary(String clientId) {
+        return !clients.isEmpty() && clients.keySet().iterator().next().equals(clientId);
+    }
+
+    private static boolean isInitialValues(Message message) {
+        return INITIAL_VALUES_RESOURCE.equals(message.getResource());
+    }
+
+    @Value
+    private static class PendingRequest {
+        String clientId;
+        long msgId;
+    }
+}
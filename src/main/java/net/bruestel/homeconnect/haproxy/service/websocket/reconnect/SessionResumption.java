@@ -0,0 +1,189 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.reconnect;
+
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.message.MessageRewriter;
+import net.bruestel.homeconnect.haproxy.service.message.model.Action;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Keeps an app session up while the proxy reconnects to the appliance.
+ * <ul>
+ *     <li>The {@code /ei/} handshake messages of the app are recorded in the first appliance session and replayed
+ *     by the proxy to every new appliance session.</li>
+ *     <li>While the appliance is away, requests of the app are buffered up to a bound.</li>
+ *     <li>Once the new appliance session is up, unanswered and buffered requests are sent again. sID and msgID are
+ *     translated between the app session and the new appliance session.</li>
+ * </ul>
+ */
+@Slf4j
+public class SessionResumption {
+    private static final String INITIAL_VALUES_RESOURCE = "/ei/initialValues";
+    private static final String HANDSHAKE_RESOURCE_PREFIX = "/ei/";
+    private static final String ED_MSG_ID = "edMsgID";
+    private static final int MAX_HANDSHAKE_MESSAGES = 8;
+    private static final int MAX_OUTSTANDING_REQUESTS = 256;
+
+    private final MessageRewriter messageRewriter;
+    private final int maxBufferedRequests;
+
+    // handshake messages of the app in the first appliance session
+    private final List<Message> handshake = new ArrayList<>();
+    // unanswered requests by app msgID
+    private final LinkedHashMap<Long, Message> outstandingRequests = new LinkedHashMap<>();
+    // app msgID by msgID of the current appliance session
+    private final Map<Long, Long> appMsgIds = new HashMap<>();
+    private final List<Message> bufferedRequests = new ArrayList<>();
+
+    private long appSid = -1;
+    private boolean suspended;
+    private boolean translating;
+    private boolean overflowed;
+    private long applianceSid;
+    private long nextMsgId;
+
+    public SessionResumption(MessageRewriter messageRewriter, int maxBufferedRequests) {
+        this.messageRewriter = messageRewriter;
+        this.maxBufferedRequests = maxBufferedRequests;
+    }
+
+    /**
+     * @return the message for the appliance session, {@code null} if it is held back until the appliance is back
+     */
+    @Synchronized
+    public Message toAppliance(Message message) {
+        if (!translating && isHandshake(message) && handshake.size() < MAX_HANDSHAKE_MESSAGES) {
+            handshake.add(message);
+        }
+
+        if (suspended) {
+            if (!message.isRequest()) {
+                // answers and notifications of the app belong to the lost appliance session
+                log.atDebug().log("[HA ] Dropping {} of app, appliance is reconnecting.", message.getAction());
+            } else if (bufferedRequests.size() >= maxBufferedRequests) {
+                overflowed = true;
+            } else {
+                bufferedRequests.add(message);
+            }
+            return null;
+        }
+
+        if (message.isRequest()) {
+            if (outstandingRequests.size() >= MAX_OUTSTANDING_REQUESTS) {
+                outstandingRequests.remove(outstandingRequests.keySet().iterator().next());
+            }
+            outstandingRequests.put(message.getMsgId(), message);
+        }
+        return translating ? translateToAppliance(message) : message;
+    }
+
+    /**
+     * @return the message for the app session
+     */
+    @Synchronized
+    public Message toApp(Message message) {
+        if (appSid < 0 && message.isRequest() && isInitialValues(message)) {
+            appSid = message.getSid();
+        }
+        if (message.getAction() != Action.RESPONSE) {
+            return translating ? messageRewriter.withHeader(message, appSid, message.getMsgId()) : message;
+        }
+
+        var appMsgId = translating ? appMsgIds.remove(message.getMsgId()) : Long.valueOf(message.getMsgId());
+        if (appMsgId == null) {
+            return messageRewriter.withHeader(message, appSid, message.getMsgId());
+        }
+        outstandingRequests.remove(appMsgId);
+        return translating ? messageRewriter.withHeader(message, appSid, appMsgId) : message;
+    }
+
+    /**
+     * Called when the appliance session is lost.
+     *
+     * @return {@code false} if the app session cannot be resumed, because its handshake is not known
+     */
+    @Synchronized
+    public boolean suspend() {
+        if (appSid < 0 || handshake.isEmpty()) {
+            return false;
+        }
+        suspended = true;
+        appMsgIds.clear();
+        return true;
+    }
+
+    /**
+     * Answers the handshake of a new appliance session and sends the unanswered and buffered requests of the app.
+     *
+     * @return {@code false} if the message is not the handshake of a new appliance session
+     */
+    @Synchronized
+    public boolean resume(Message message, Consumer<Message> upstream) {
+        if (!suspended || !message.isRequest() || !isInitialValues(message)) {
+            return false;
+        }
+
+        applianceSid = message.getSid();
+        nextMsgId = message.toJsonNode().path("data").path(0).path(ED_MSG_ID).asLong(message.getMsgId() + 1);
+        translating = true;
+        suspended = false;
+
+        for (Message handshakeMessage : handshake) {
+            var msgId = handshakeMessage.getAction() == Action.RESPONSE ? message.getMsgId() : nextMsgId++;
+            upstream.accept(messageRewriter.withHeader(handshakeMessage, applianceSid, msgId));
+        }
+
+        var requests = new ArrayList<>(outstandingRequests.values());
+        requests.addAll(bufferedRequests);
+        bufferedRequests.clear();
+        log.atInfo().log("[HA ] Appliance session resumed, sending {} requests again.", requests.size());
+        for (Message request : requests) {
+            outstandingRequests.put(request.getMsgId(), request);
+            upstream.accept(translateToAppliance(request));
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if more requests arrived during the reconnect than can be buffered
+     */
+    @Synchronized
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    private Message translateToAppliance(Message message) {
+        if (message.getAction() == Action.RESPONSE) {
+            // answers a request of the current appliance session
+            return messageRewriter.withHeader(message, applianceSid, message.getMsgId());
+        }
+
+        var msgId = nextMsgId++;
+        if (message.isRequest()) {
+            appMsgIds.put(msgId, message.getMsgId());
+        }
+        return messageRewriter.withHeader(message, applianceSid, msgId);
+    }
+
+    // the answer to /ei/initialValues and the /ei/ notifications of the app (e.g. deviceReady)
+    private static boolean isHandshake(Message message) {
+        if (isInitialValues(message)) {
+            return message.getAction() == Action.RESPONSE;
+        }
+        return message.getAction() == Action.NOTIFY
+                && message.getResource() != null
+                && message.getResource().startsWith(HANDSHAKE_RESOURCE_PREFIX);
+    }
+
+    private static boolean isInitialValues(Message message) {
+        return INITIAL_VALUES_RESOURCE.equals(message.getResource());
+    }
+}
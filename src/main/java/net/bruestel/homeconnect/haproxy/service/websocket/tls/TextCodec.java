@@ -0,0 +1,42 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.tls;
+
+import lombok.Value;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.ReceivedFrame;
+import net.bruestel.homeconnect.haproxy.service.websocket.TransportCodec;
+
+/**
+ * Text frames carry the UTF-8 message as is, the encryption is done by the TLS layer.
+ */
+public class TextCodec implements TransportCodec {
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public ReceivedFrame open(byte[] data) {
+        return new TextFrame(data);
+    }
+
+    @Override
+    public byte[] seal(ReceivedFrame frame, byte[] payload) {
+        return payload;
+    }
+
+    @Override
+    public byte[] seal(byte[] payload) {
+        return payload;
+    }
+
+    @Value
+    private static class TextFrame implements ReceivedFrame {
+        byte[] data;
+
+        @Override
+        public byte[] getPayload() {
+            return data;
+        }
+    }
+}
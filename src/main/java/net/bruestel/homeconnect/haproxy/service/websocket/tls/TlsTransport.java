@@ -0,0 +1,121 @@
+package net.bruestel.homeconnect.haproxy.service.websocket.tls;
+
+import lombok.Getter;
+
+import net.bruestel.homeconnect.haproxy.service.websocket.Transport;
+import net.bruestel.homeconnect.haproxy.service.websocket.TransportCodec;
+
+import org.conscrypt.Conscrypt;
+import org.eclipse.jetty.client.GZIPContentDecoder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.transport.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+/**
+ * TLS 1.2 with pre-shared key (ECDHE-PSK-CHACHA20-POLY1305) on both connections, text frames.
+ */
+public class TlsTransport implements Transport {
+
+    private static final String CONSCRYPT_PROVIDER = "Conscrypt";
+    private static final String PSK_IDENTITY = "HCCOM_Local_App";
+    private static final String TLSV_1_2 = "TLSv1.2";
+    private static final String TLS_ECDHE_PSK_WITH_CHACHA_20_POLY_1305_SHA_256 = "TLS_ECDHE_PSK_WITH_CHACHA20_POLY1305_SHA256";
+    private static final String TLS = "TLS";
+    private static final Provider PROVIDER = Conscrypt.newProviderBuilder().setName(CONSCRYPT_PROVIDER).build();
+    private static final String HTTP_1_1 = "http/1.1";
+
+    @Getter
+    private final URI homeApplianceWebsocketUri;
+    private final byte[] psk;
+
+    public TlsTransport(URI homeApplianceWebsocketUri, String base64PreSharedKey) {
+        this.homeApplianceWebsocketUri = homeApplianceWebsocketUri;
+        this.psk = Base64.getUrlDecoder().decode(base64PreSharedKey);
+    }
+
+    @Override
+    public ServerConnector newServerConnector(Server server, int port) throws GeneralSecurityException {
+        var sslContextFactory = new SslContextFactory.Server();
+        sslContextFactory.setSslContext(newSslContext());
+        sslContextFactory.setIncludeCipherSuites(TLS_ECDHE_PSK_WITH_CHACHA_20_POLY_1305_SHA_256);
+        sslContextFactory.setIncludeProtocols(TLSV_1_2);
+
+        var secureRequestCustomizer = new SecureRequestCustomizer();
+        secureRequestCustomizer.setSniHostCheck(false);
+        secureRequestCustomizer.setSniRequired(false);
+
+        var https = new HttpConfiguration();
+        https.setSecureScheme("https");
+        https.setSecurePort(port);
+        https.addCustomizer(secureRequestCustomizer);
+
+        var sslConnectionFactory = new SslConnectionFactory(sslContextFactory, HTTP_1_1);
+        var httpConnectionFactory = new HttpConnectionFactory(https);
+
+        var sslConnector = new ServerConnector(server, sslConnectionFactory, httpConnectionFactory);
+        sslConnector.setPort(port);
+        return sslConnector;
+    }
+
+    @Override
+    public void updateServerConnector(ServerConnector connector) throws Exception {
+        var sslContext = newSslContext();
+        connector.getConnectionFactory(SslConnectionFactory.class)
+                .getSslContextFactory()
+                .reload(sslContextFactory -> sslContextFactory.setSslContext(sslContext));
+    }
+
+    @Override
+    public HttpClient newHttpClient() throws GeneralSecurityException {
+        var sslContextFactory = new SslContextFactory.Client();
+        sslContextFactory.setSslContext(newSslContext());
+        sslContextFactory.setIncludeCipherSuites(TLS_ECDHE_PSK_WITH_CHACHA_20_POLY_1305_SHA_256);
+        sslContextFactory.setIncludeProtocols(TLSV_1_2);
+
+        var httpClient = new HttpClient(new HttpClientTransportOverHTTP());
+        httpClient.setSslContextFactory(sslContextFactory);
+        httpClient.getContentDecoderFactories().put(new GZIPContentDecoder.Factory());
+        return httpClient;
+    }
+
+    @Override
+    public TransportCodec newAppCodec() {
+        return new TextCodec();
+    }
+
+    @Override
+    public TransportCodec newApplianceCodec() {
+        return new TextCodec();
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        return Map.of();
+    }
+
+    private SSLContext newSslContext() throws GeneralSecurityException {
+        var sslContext = SSLContext.getInstance(TLS, PROVIDER);
+        sslContext.init(
+                new KeyManager[] { new ConscryptPskKeyManager(PSK_IDENTITY, psk) },
+                new TrustManager[0],
+                new SecureRandom());
+        return sslContext;
+    }
+}
@@ -0,0 +1,159 @@
+package net.bruestel.homeconnect.haproxy.ui;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import net.bruestel.homeconnect.haproxy.service.capture.CaptureReader;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.ui.model.CaptureEntry;
+import net.bruestel.homeconnect.haproxy.ui.model.CaptureEntryList;
+import net.bruestel.homeconnect.haproxy.ui.model.Sender;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+/**
+ * Viewer of a saved capture file. The rows are read from the memory-mapped capture when they are scrolled into
+ * view, they have a fixed height so the table never measures rows it does not show.
+ */
+public final class CaptureView extends VBox {
+    private static final double ROW_HEIGHT = 24;
+
+    private final ObjectWriter objectWriter = new ObjectMapper().writer();
+    private final CaptureReader captureReader;
+    private final CaptureEntryList captureEntries;
+    private final Label status = new Label();
+
+    public CaptureView(CaptureReader captureReader) {
+        this.captureReader = captureReader;
+        this.captureEntries = new CaptureEntryList(captureReader);
+
+        Label title = new Label("Capture: " + captureReader.getFile().getFileName());
+        title.setStyle("-fx-font-size: 20px; -fx-font-weight: bold;");
+
+        HBox topBar = new HBox();
+        HBox.setHgrow(status, Priority.ALWAYS);
+        status.setMaxWidth(Double.MAX_VALUE);
+        status.setAlignment(Pos.CENTER_RIGHT);
+        topBar.getChildren().addAll(title, new Region(), status);
+        topBar.setPadding(new Insets(10));
+        topBar.setSpacing(10);
+        topBar.setAlignment(Pos.CENTER_LEFT);
+
+        TableView<CaptureEntry> tableView = new TableView<>();
+        tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        tableView.setFixedCellSize(ROW_HEIGHT);
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        TableColumn<CaptureEntry, ZonedDateTime> timestampCol = new TableColumn<>("Timestamp");
+        timestampCol.setCellValueFactory(new PropertyValueFactory<>("timestamp"));
+        timestampCol.setMinWidth(170);
+        timestampCol.setMaxWidth(170);
+        timestampCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(ZonedDateTime item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : item.format(formatter));
+            }
+        });
+
+        TableColumn<CaptureEntry, Object> sessionCol = new TableColumn<>("Session");
+        sessionCol.setCellValueFactory(new PropertyValueFactory<>("sessionId"));
+        sessionCol.setMinWidth(70);
+        sessionCol.setMaxWidth(70);
+
+        TableColumn<CaptureEntry, Sender> directionCol = new TableColumn<>("");
+        directionCol.setCellValueFactory(new PropertyValueFactory<>("sender"));
+        directionCol.setMinWidth(20);
+        directionCol.setMaxWidth(20);
+        directionCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Sender item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                } else {
+                    setText(Sender.HOME_APPLIANCE.equals(item) ? "\uD83C\uDFE0" : "\uD83D\uDCF1");
+                }
+            }
+        });
+
+        TableColumn<CaptureEntry, Long> responseTimeCol = new TableColumn<>("Latency");
+        responseTimeCol.setCellValueFactory(new PropertyValueFactory<>("responseTime"));
+        responseTimeCol.setMinWidth(70);
+        responseTimeCol.setMaxWidth(70);
+        responseTimeCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Long item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : item + " ms");
+            }
+        });
+
+        TableColumn<CaptureEntry, String> tagsCol = new TableColumn<>("Tags");
+        tagsCol.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(
+                String.join(", ", cellData.getValue().getTags())));
+        tagsCol.setMinWidth(70);
+        tagsCol.setMaxWidth(120);
+
+        // one line per message, the JSON is not pretty printed
+        TableColumn<CaptureEntry, Message> messageCol = new TableColumn<>("Message");
+        messageCol.setCellValueFactory(new PropertyValueFactory<>("message"));
+        messageCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Message item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                } else {
+                    try {
+                        setText(objectWriter.writeValueAsString(item));
+                    } catch (Exception e) {
+                        setText(item.toString()); // fallback
+                    }
+                }
+            }
+        });
+
+        Label emptyTablePlaceholder = new Label("The capture has no messages.");
+        emptyTablePlaceholder.setStyle("-fx-font-style: italic; -fx-text-fill: grey;");
+        tableView.setPlaceholder(emptyTablePlaceholder);
+
+        var columns = tableView.getColumns();
+        columns.add(directionCol);
+        columns.add(timestampCol);
+        columns.add(sessionCol);
+        columns.add(responseTimeCol);
+        columns.add(tagsCol);
+        columns.add(messageCol);
+        tableView.setItems(captureEntries);
+
+        captureEntries.addListener((ListChangeListener<CaptureEntry>) change -> updateStatus());
+        captureEntries.indexCompleteProperty().addListener((observable, oldValue, newValue) -> updateStatus());
+        updateStatus();
+
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+        setPadding(new Insets(10));
+        setSpacing(10);
+        getChildren().addAll(topBar, tableView);
+    }
+
+    private void updateStatus() {
+        status.setText(String.format("%,d messages, %,d KiB%s", captureEntries.size(),
+                captureReader.getFileSize() / 1024, captureReader.isIndexComplete() ? "" : " (indexing...)"));
+    }
+}
@@ -6,10 +6,17 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import net.bruestel.homeconnect.haproxy.service.correlation.CorrelationEngine;
+import net.bruestel.homeconnect.haproxy.service.log.LogStore;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
+import net.bruestel.homeconnect.haproxy.service.message.model.DataItem;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+import net.bruestel.homeconnect.haproxy.service.rule.RuleEngine;
 import net.bruestel.homeconnect.haproxy.ui.model.LogEntry;
+import net.bruestel.homeconnect.haproxy.ui.model.LogEntryList;
 import net.bruestel.homeconnect.haproxy.ui.model.Sender;
 
 import java.io.File;
@@ -17,13 +24,17 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import javafx.collections.FXCollections;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
@@ -41,9 +52,18 @@ public class LogView extends VBox {
 
     private final ObjectWriter objectWriter;
     @Getter
-    private final ObservableList<LogEntry> logEntries = FXCollections.observableArrayList();
+    private final LogStore logStore = LogStore.fromSystemProperties();
+    private final ObservableList<LogEntry> logEntries = new LogEntryList(logStore);
+    // shown instead of the log entries while repeats are collapsed
+    private LogEntryList collapsedLogEntries;
+    @Setter
+    private Supplier<Map<String, Long>> proxyStatisticsSupplier = Map::of;
+    // changes the secrets and settings of the running proxy, its app sessions are kept
+    @Setter
+    private Runnable reconfigureAction;
 
-    public LogView(Stage stage, HomeAppliance homeAppliance, Consumer<Void> cancelEvent) {
+    public LogView(Stage stage, HomeAppliance homeAppliance, CorrelationEngine correlationEngine,
+                   RuleEngine ruleEngine, Consumer<Void> cancelEvent) {
         var objectMapper = new ObjectMapper();
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         objectMapper.registerModule(new JavaTimeModule());
@@ -53,9 +73,21 @@ public class LogView extends VBox {
         title.setStyle("-fx-font-size: 20px; -fx-font-weight: bold;");
 
         Button cancelButton = new Button("Cancel");
+        Button reconfigureButton = new Button("Reconfigure");
         Button exportButton = new Button("Export Log");
+        Button captureButton = new Button("Save Capture");
+        Button responseTimeButton = new Button("Response Times");
+        Button statisticsButton = new Button("Statistics");
+        Button ruleButton = new Button("Rules");
+        ruleButton.setDisable(ruleEngine.isEmpty());
+        CheckBox collapseRepeatsCheckBox = new CheckBox("Collapse Repeats");
 
         cancelButton.setOnAction(actionEvent -> cancelEvent.accept(null));
+        reconfigureButton.setOnAction(actionEvent -> {
+            if (reconfigureAction != null) {
+                reconfigureAction.run();
+            }
+        });
         exportButton.setOnAction(logExportActionEvent -> {
             FileChooser fileChooser = new FileChooser();
             fileChooser.setTitle("Save Message Log");
@@ -72,7 +104,51 @@ public class LogView extends VBox {
             }
         });
 
-        HBox buttonBar = new HBox(10, exportButton, cancelButton);
+        captureButton.setOnAction(actionEvent -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Save Capture");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Capture Files", "*.hcc"));
+            fileChooser.setInitialFileName("capture-" + homeAppliance.getId().toLowerCase() + "-" + System.currentTimeMillis() + ".hcc");
+
+            File file = fileChooser.showSaveDialog(stage);
+            if (file != null) {
+                new Thread(() -> {
+                    try {
+                        var entries = logStore.writeCapture(file.toPath());
+                        log.atInfo().log("Saved {} messages to capture {} ({} bytes)", entries, file, file.length());
+                    } catch (IOException ioException) {
+                        log.atError().log("Error writing capture file: {}", ioException.getMessage(), ioException);
+                    }
+                }, "capture-writer").start();
+            }
+        });
+
+        responseTimeButton.setOnAction(actionEvent -> {
+            Stage responseTimeStage = new Stage();
+            responseTimeStage.initOwner(stage);
+            responseTimeStage.setTitle("Response Times: " + homeAppliance.getId());
+            responseTimeStage.setScene(new Scene(new ResponseTimeView(correlationEngine), 900, 400));
+            responseTimeStage.show();
+        });
+
+        ruleButton.setOnAction(actionEvent -> {
+            Stage ruleStage = new Stage();
+            ruleStage.initOwner(stage);
+            ruleStage.setTitle("Rules: " + homeAppliance.getId());
+            ruleStage.setScene(new Scene(new RuleView(ruleEngine), 600, 400));
+            ruleStage.show();
+        });
+
+        statisticsButton.setOnAction(actionEvent -> {
+            Stage statisticsStage = new Stage();
+            statisticsStage.initOwner(stage);
+            statisticsStage.setTitle("Proxy Statistics: " + homeAppliance.getId());
+            statisticsStage.setScene(new Scene(new StatisticsView(() -> proxyStatisticsSupplier.get()), 500, 400));
+            statisticsStage.show();
+        });
+
+        HBox buttonBar = new HBox(10, collapseRepeatsCheckBox, statisticsButton, ruleButton, responseTimeButton,
+                captureButton, exportButton, reconfigureButton, cancelButton);
         buttonBar.setAlignment(Pos.CENTER_RIGHT);
 
         HBox topBar = new HBox();
@@ -131,7 +207,43 @@ public class LogView extends VBox {
             }
         });
 
-        TableColumn<LogEntry, Object> messageCol = new TableColumn<>("Message");
+        TableColumn<LogEntry, Long> responseTimeCol = new TableColumn<>("Latency");
+        responseTimeCol.setCellValueFactory(new PropertyValueFactory<>("responseTime"));
+        responseTimeCol.setMinWidth(70);
+        responseTimeCol.setMaxWidth(70);
+        responseTimeCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Long item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : item + " ms");
+            }
+        });
+
+        TableColumn<LogEntry, Integer> repeatCountCol = new TableColumn<>("Count");
+        repeatCountCol.setCellValueFactory(new PropertyValueFactory<>("repeatCount"));
+        repeatCountCol.setMinWidth(50);
+        repeatCountCol.setMaxWidth(50);
+        repeatCountCol.setVisible(false);
+        repeatCountCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Integer item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null || item == 1 ? null : "\u00D7" + item);
+            }
+        });
+
+        TableColumn<LogEntry, String> tagsCol = new TableColumn<>("Tags");
+        tagsCol.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(
+                String.join("\n", cellData.getValue().getTags())));
+        tagsCol.setMinWidth(70);
+        tagsCol.setMaxWidth(120);
+
+        TableColumn<LogEntry, String> featuresCol = new TableColumn<>("Features");
+        featuresCol.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(
+                describeFeatures(cellData.getValue())));
+        featuresCol.setMinWidth(100);
+
+        TableColumn<LogEntry, Message> messageCol = new TableColumn<>("Message");
         messageCol.setCellValueFactory(new PropertyValueFactory<>("message"));
 
         Label emptyTablePlaceholder = new Label("Waiting for messages...");
@@ -142,7 +254,7 @@ public class LogView extends VBox {
         // JSON pretty print
         messageCol.setCellFactory(col -> new TableCell<>() {
             @Override
-            protected void updateItem(Object item, boolean empty) {
+            protected void updateItem(Message item, boolean empty) {
                 super.updateItem(item, empty);
                 if (empty || item == null) {
                     setText(null);
@@ -157,12 +269,51 @@ public class LogView extends VBox {
         });
 
         //noinspection unchecked
-        tableView.getColumns().addAll(directionCol, timestampCol, sessionCol, messageCol);
+        tableView.getColumns().addAll(directionCol, timestampCol, sessionCol, repeatCountCol, responseTimeCol, tagsCol,
+                featuresCol, messageCol);
         tableView.setItems(logEntries);
 
+        collapseRepeatsCheckBox.selectedProperty().addListener((observable, oldValue, collapse) -> {
+            if (collapse) {
+                collapsedLogEntries = new LogEntryList(logStore, true);
+                tableView.setItems(collapsedLogEntries);
+            } else {
+                tableView.setItems(logEntries);
+                collapsedLogEntries.dispose();
+                collapsedLogEntries = null;
+            }
+            repeatCountCol.setVisible(collapse);
+        });
+
         VBox.setVgrow(tableView, Priority.ALWAYS);
         setPadding(new Insets(10));
         setSpacing(10);
         getChildren().addAll(topBar, tableView);
     }
+
+    // resolved when the row is shown, not when the message arrives
+    private static String describeFeatures(LogEntry logEntry) {
+        var featureTable = logEntry.getFeatureTable();
+        if (featureTable == null) {
+            return null;
+        }
+
+        var message = logEntry.getMessage();
+        if (message == null) {
+            return null;
+        }
+
+        var text = new StringBuilder();
+        for (DataItem dataItem : message.getData()) {
+            var length = text.length();
+            if (length > 0) {
+                text.append('\n');
+            }
+            featureTable.describe(dataItem, text);
+            if (text.length() == length + 1) {
+                text.setLength(length);
+            }
+        }
+        return text.toString();
+    }
 }
@@ -1,24 +1,20 @@
 package net.bruestel.homeconnect.haproxy.ui;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import lombok.extern.slf4j.Slf4j;
 
+import net.bruestel.homeconnect.haproxy.service.credential.CredentialStore;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
 import net.bruestel.homeconnect.haproxy.ui.model.HomeApplianceSecrets;
 
-import java.io.ByteArrayOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
 import java.util.function.Consumer;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Alert;
@@ -37,9 +33,21 @@ import javafx.stage.FileChooser;
 @Slf4j
 public class ProxyConfigurationView extends VBox {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    public ProxyConfigurationView(HomeAppliance homeAppliance,
+                                  CredentialStore credentialStore,
+                                  Consumer<HomeApplianceSecrets> keyConsumer,
+                                  Consumer<Void> cancelConsumer) {
+        this(homeAppliance, credentialStore, null, "Start Proxy", keyConsumer, cancelConsumer);
+    }
 
+    /**
+     * @param currentSecrets secrets the form is filled with, the stored profile is used if {@code null}
+     * @param confirmText    text of the button that passes the secrets on
+     */
     public ProxyConfigurationView(HomeAppliance homeAppliance,
+                                  CredentialStore credentialStore,
+                                  HomeApplianceSecrets currentSecrets,
+                                  String confirmText,
                                   Consumer<HomeApplianceSecrets> keyConsumer,
                                   Consumer<Void> cancelConsumer) {
 
@@ -55,7 +63,7 @@ public class ProxyConfigurationView extends VBox {
         TextField pskField = new TextField();
         pskField.setPrefWidth(400);
 
-        Button connectButton = new Button("Start Proxy");
+        Button connectButton = new Button(confirmText);
         connectButton.setOnAction(event -> {
             var key = keyField.getText();
             var iv = ivField.getText();
@@ -110,55 +118,33 @@ public class ProxyConfigurationView extends VBox {
                     new FileChooser.ExtensionFilter("Home Connect Profile Downloader Files", "*.zip")
             );
             File file = fileChooser.showOpenDialog(getScene().getWindow());
-            var success = false;
             if (file != null) {
-                try (ZipInputStream zis = new ZipInputStream(new FileInputStream(file))) {
-                    ZipEntry entry;
-                    while ((entry = zis.getNextEntry()) != null) {
-                        if (entry.getName().endsWith(".json")) {
-                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                            byte[] buffer = new byte[1024];
-                            int len;
-                            while ((len = zis.read(buffer)) > 0) {
-                                baos.write(buffer, 0, len);
-                            }
-
-                            String jsonString = baos.toString(StandardCharsets.UTF_8);
-
-                            JsonNode root = objectMapper.readTree(jsonString);
-
-                            if (!root.has("connectionType") || !root.has("key")) {
-                                return;
-                            }
-
-                            String connectionType = root.path("connectionType").asText();
-                            String key = root.path("key").asText();
-                            String iv = root.path("iv").asText();
-
-                            if ("TLS".equals(connectionType)) {
-                                pskField.setText(key);
-                            } else {
-                                keyField.setText(key);
-                                ivField.setText(iv);
-                            }
-                            success = true;
-
-                            return;
-                        }
+                // read in the background, the profile is also kept for the next time
+                loadFileButton.setDisable(true);
+                credentialStore.importProfiles(List.of(file.toPath())).thenAccept(result -> Platform.runLater(() -> {
+                    loadFileButton.setDisable(false);
+                    var profile = result.getImported().stream()
+                            .filter(importedProfile -> homeAppliance.getId().equals(importedProfile.getApplianceId()))
+                            .findFirst()
+                            .or(() -> result.getImported().stream().findFirst());
+                    if (profile.isPresent()) {
+                        fill(profile.get().toSecrets(), pskField, keyField, ivField);
+                    } else {
+                        Alert alert = new Alert(Alert.AlertType.WARNING);
+                        alert.setTitle("Profile File Error");
+                        alert.setHeaderText("Could not read profile file.");
+                        alert.setContentText("Please select a valid file.");
+                        alert.showAndWait();
                     }
-                } catch (IOException e) {
-                    log.atError().log("Error reading file: {}", e.getMessage(), e);
-                }
-
-                if (!success) {
-                    Alert alert = new Alert(Alert.AlertType.WARNING);
-                    alert.setTitle("Profile File Error");
-                    alert.setHeaderText("Could not read profile file.");
-                    alert.setContentText("Please select a valid file.");
-                    alert.showAndWait();
-                }
+                }));
             }
         });
+        if (currentSecrets != null) {
+            fill(currentSecrets, pskField, keyField, ivField);
+        } else {
+            credentialStore.get(homeAppliance.getId())
+                    .ifPresent(profile -> fill(profile.toSecrets(), pskField, keyField, ivField));
+        }
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -186,4 +172,10 @@ public class ProxyConfigurationView extends VBox {
                 buttonBar
         );
     }
+
+    private static void fill(HomeApplianceSecrets secrets, TextField pskField, TextField keyField, TextField ivField) {
+        pskField.setText(StringUtils.defaultString(secrets.getPsk()));
+        keyField.setText(StringUtils.defaultString(secrets.getKey()));
+        ivField.setText(StringUtils.defaultString(secrets.getIv()));
+    }
 }
@@ -0,0 +1,78 @@
+package net.bruestel.homeconnect.haproxy.ui;
+
+import net.bruestel.homeconnect.haproxy.service.correlation.CorrelationEngine;
+import net.bruestel.homeconnect.haproxy.service.correlation.model.ResourceStatistics;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+public final class ResponseTimeView extends VBox {
+
+    private final CorrelationEngine correlationEngine;
+    private final TableView<ResourceStatistics> tableView = new TableView<>();
+
+    public ResponseTimeView(CorrelationEngine correlationEngine) {
+        this.correlationEngine = correlationEngine;
+
+        TableColumn<ResourceStatistics, String> resourceCol = new TableColumn<>("Resource");
+        resourceCol.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getResource()));
+        resourceCol.setMinWidth(250);
+
+        var columns = tableView.getColumns();
+        columns.add(resourceCol);
+        columns.add(column("Responses", statistics -> statistics.getHistogram().getCount()));
+        columns.add(column("Mean (ms)", statistics -> statistics.getHistogram().getMeanMillis()));
+        columns.add(column("p50 (ms)", statistics -> statistics.getHistogram().getPercentileMillis(50)));
+        columns.add(column("p95 (ms)", statistics -> statistics.getHistogram().getPercentileMillis(95)));
+        columns.add(column("p99 (ms)", statistics -> statistics.getHistogram().getPercentileMillis(99)));
+        columns.add(column("Max (ms)", statistics -> statistics.getHistogram().getMaxMillis()));
+        columns.add(column("Timeouts", ResourceStatistics::getTimeoutCount));
+        columns.add(column("Errors", ResourceStatistics::getErrorCount));
+        tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        Label emptyTablePlaceholder = new Label("No responses yet.");
+        emptyTablePlaceholder.setStyle("-fx-font-style: italic; -fx-text-fill: grey;");
+        tableView.setPlaceholder(emptyTablePlaceholder);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(actionEvent -> refresh());
+
+        HBox buttonBar = new HBox(10, refreshButton);
+        buttonBar.setAlignment(Pos.CENTER_RIGHT);
+
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+        setPadding(new Insets(10));
+        setSpacing(10);
+        getChildren().addAll(buttonBar, tableView);
+
+        refresh();
+    }
+
+    public void refresh() {
+        var statistics = correlationEngine.getStatistics();
+        tableView.getItems().setAll(statistics.stream()
+                .sorted(Comparator.comparingLong((ResourceStatistics s) -> s.getHistogram().getPercentileMillis(95))
+                        .reversed())
+                .toList());
+    }
+
+    private static TableColumn<ResourceStatistics, Long> column(String title,
+                                                               Function<ResourceStatistics, Long> valueFunction) {
+        TableColumn<ResourceStatistics, Long> column = new TableColumn<>(title);
+        column.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(valueFunction.apply(cellData.getValue())));
+        column.setMinWidth(70);
+        return column;
+    }
+}
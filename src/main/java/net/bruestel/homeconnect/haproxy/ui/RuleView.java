@@ -0,0 +1,60 @@
+package net.bruestel.homeconnect.haproxy.ui;
+
+import net.bruestel.homeconnect.haproxy.service.rule.RuleEngine;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleAction;
+import net.bruestel.homeconnect.haproxy.service.rule.model.RuleStatistics;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+public final class RuleView extends VBox {
+
+    private final RuleEngine ruleEngine;
+    private final TableView<RuleStatistics> tableView = new TableView<>();
+
+    public RuleView(RuleEngine ruleEngine) {
+        this.ruleEngine = ruleEngine;
+
+        TableColumn<RuleStatistics, String> nameCol = new TableColumn<>("Rule");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setMinWidth(250);
+        TableColumn<RuleStatistics, RuleAction> actionCol = new TableColumn<>("Action");
+        actionCol.setCellValueFactory(new PropertyValueFactory<>("action"));
+        TableColumn<RuleStatistics, Long> hitsCol = new TableColumn<>("Hits");
+        hitsCol.setCellValueFactory(new PropertyValueFactory<>("hits"));
+
+        tableView.getColumns().add(nameCol);
+        tableView.getColumns().add(actionCol);
+        tableView.getColumns().add(hitsCol);
+        tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        Label emptyTablePlaceholder = new Label("No rules configured.");
+        emptyTablePlaceholder.setStyle("-fx-font-style: italic; -fx-text-fill: grey;");
+        tableView.setPlaceholder(emptyTablePlaceholder);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(actionEvent -> refresh());
+
+        HBox buttonBar = new HBox(10, refreshButton);
+        buttonBar.setAlignment(Pos.CENTER_RIGHT);
+
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+        setPadding(new Insets(10));
+        setSpacing(10);
+        getChildren().addAll(buttonBar, tableView);
+
+        refresh();
+    }
+
+    public void refresh() {
+        tableView.getItems().setAll(ruleEngine.getStatistics());
+    }
+}
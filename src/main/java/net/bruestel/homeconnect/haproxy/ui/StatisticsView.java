@@ -0,0 +1,57 @@
+package net.bruestel.homeconnect.haproxy.ui;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+public final class StatisticsView extends VBox {
+
+    private final Supplier<Map<String, Long>> statisticsSupplier;
+    private final TableView<Map.Entry<String, Long>> tableView = new TableView<>();
+
+    public StatisticsView(Supplier<Map<String, Long>> statisticsSupplier) {
+        this.statisticsSupplier = statisticsSupplier;
+
+        TableColumn<Map.Entry<String, Long>, String> nameCol = new TableColumn<>("Name");
+        nameCol.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getKey()));
+        nameCol.setMinWidth(250);
+        TableColumn<Map.Entry<String, Long>, Long> valueCol = new TableColumn<>("Value");
+        valueCol.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getValue()));
+
+        tableView.getColumns().add(nameCol);
+        tableView.getColumns().add(valueCol);
+        tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        Label emptyTablePlaceholder = new Label("No statistics available.");
+        emptyTablePlaceholder.setStyle("-fx-font-style: italic; -fx-text-fill: grey;");
+        tableView.setPlaceholder(emptyTablePlaceholder);
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(actionEvent -> refresh());
+
+        HBox buttonBar = new HBox(10, refreshButton);
+        buttonBar.setAlignment(Pos.CENTER_RIGHT);
+
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+        setPadding(new Insets(10));
+        setSpacing(10);
+        getChildren().addAll(buttonBar, tableView);
+
+        refresh();
+    }
+
+    public void refresh() {
+        tableView.getItems().setAll(statisticsSupplier.get().entrySet());
+    }
+}
@@ -3,22 +3,32 @@ package net.bruestel.homeconnect.haproxy.ui;
 import lombok.Getter;
 import lombok.Setter;
 
+import net.bruestel.homeconnect.haproxy.service.mdns.model.ApplianceRegistryUpdate;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.ConnectionType;
 import net.bruestel.homeconnect.haproxy.service.mdns.model.HomeAppliance;
 
+import java.io.File;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 
 public class TableView extends VBox {
 
@@ -27,6 +37,12 @@ public class TableView extends VBox {
     private final javafx.scene.control.TableView<HomeAppliance> tableViewElement;
     @Setter
     private Consumer<HomeAppliance> homeApplianceSelectedAction;
+    @Setter
+    private Predicate<HomeAppliance> profileAvailable = homeAppliance -> false;
+    @Setter
+    private Consumer<List<File>> importProfilesAction;
+    @Setter
+    private Consumer<File> openCaptureAction;
 
     public TableView() {
         tableViewElement = new javafx.scene.control.TableView<>();
@@ -53,6 +69,14 @@ public class TableView extends VBox {
         connectionTypeCol.setCellValueFactory(new PropertyValueFactory<>("connectionType"));
         addressCol.setMinWidth(5);
 
+        TableColumn<HomeAppliance, String> statusCol = new TableColumn<>("Status");
+        statusCol.setCellValueFactory(cellData ->
+                new ReadOnlyStringWrapper(cellData.getValue().isCached() ? "Cached" : "Online"));
+
+        TableColumn<HomeAppliance, String> profileCol = new TableColumn<>("Profile");
+        profileCol.setCellValueFactory(cellData ->
+                new ReadOnlyStringWrapper(profileAvailable.test(cellData.getValue()) ? "Yes" : "No"));
+
 
         TableColumn<HomeAppliance, Void> actionCol = new TableColumn<>("Action");
         actionCol.setCellFactory(col -> new TableCell<>() {
@@ -79,7 +103,8 @@ public class TableView extends VBox {
         actionCol.setMinWidth(100);
 
         //noinspection unchecked
-        tableViewElement.getColumns().addAll(idCol, brandCol, typeCol, vibCol, addressCol, connectionTypeCol, actionCol);
+        tableViewElement.getColumns().addAll(idCol, brandCol, typeCol, vibCol, addressCol, connectionTypeCol, statusCol,
+                profileCol, actionCol);
         tableViewElement.setMinHeight(30);
         tableViewElement.setSelectionModel(null);
         tableViewElement.setColumnResizePolicy(javafx.scene.control.TableView.CONSTRAINED_RESIZE_POLICY_LAST_COLUMN);
@@ -90,11 +115,66 @@ public class TableView extends VBox {
         emptyTablePlaceholder.setStyle("-fx-font-style: italic; -fx-text-fill: grey;");
         tableViewElement.setPlaceholder(emptyTablePlaceholder);
 
+        Button importProfilesButton = new Button("Import Profiles");
+        importProfilesButton.setOnAction(actionEvent -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Choose Profile Files");
+            fileChooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("Home Connect Profile Downloader Files", "*.zip")
+            );
+            List<File> files = fileChooser.showOpenMultipleDialog(getScene().getWindow());
+            if (files != null && importProfilesAction != null) {
+                importProfilesAction.accept(files);
+            }
+        });
+        Button openCaptureButton = new Button("Open Capture");
+        openCaptureButton.setOnAction(actionEvent -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open Capture");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Capture Files", "*.hcc"));
+            File file = fileChooser.showOpenDialog(getScene().getWindow());
+            if (file != null && openCaptureAction != null) {
+                openCaptureAction.accept(file);
+            }
+        });
+        HBox buttonBar = new HBox(10, openCaptureButton, importProfilesButton);
+        buttonBar.setAlignment(Pos.CENTER_RIGHT);
+        buttonBar.setPadding(new Insets(10));
+
         VBox.setVgrow(tableViewElement, javafx.scene.layout.Priority.ALWAYS);
-        getChildren().addAll(tableViewElement);
+        getChildren().addAll(tableViewElement, buttonBar);
     }
 
     public void refresh() {
         tableViewElement.refresh();
     }
+
+    /**
+     * Applies a batch of registry changes with a single change of the item list.
+     */
+    public void apply(ApplianceRegistryUpdate update) {
+        var removedIds = update.getRemoved().stream()
+                .map(HomeAppliance::getId)
+                .collect(Collectors.toSet());
+        var items = new ArrayList<HomeAppliance>(homeAppliances.size() + update.getUpdated().size());
+        var indexById = new HashMap<String, Integer>();
+        for (HomeAppliance homeAppliance : homeAppliances) {
+            if (!removedIds.contains(homeAppliance.getId())) {
+                indexById.put(homeAppliance.getId(), items.size());
+                items.add(homeAppliance);
+            }
+        }
+
+        for (HomeAppliance homeAppliance : update.getUpdated()) {
+            var index = indexById.get(homeAppliance.getId());
+            if (index != null) {
+                items.set(index, homeAppliance);
+            } else {
+                indexById.put(homeAppliance.getId(), items.size());
+                items.add(homeAppliance);
+            }
+        }
+
+        homeAppliances.setAll(items);
+    }
 }
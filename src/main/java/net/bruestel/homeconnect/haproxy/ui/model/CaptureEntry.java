@@ -0,0 +1,67 @@
+package net.bruestel.homeconnect.haproxy.ui.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+import net.bruestel.homeconnect.haproxy.service.message.MessageDecoder;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Row of a capture file. The message is decoded when it is shown for the first time.
+ */
+@Slf4j
+public class CaptureEntry {
+    private static final MessageDecoder MESSAGE_DECODER = new MessageDecoder();
+
+    private final CaptureRecord captureRecord;
+    private Message message;
+
+    public CaptureEntry(CaptureRecord captureRecord) {
+        this.captureRecord = captureRecord;
+    }
+
+    public ZonedDateTime getTimestamp() {
+        return Instant.ofEpochSecond(0, captureRecord.getTimestampNanos()).atZone(ZoneId.systemDefault());
+    }
+
+    public String getSessionId() {
+        return captureRecord.getSessionId();
+    }
+
+    public Sender getSender() {
+        return captureRecord.getSender();
+    }
+
+    public List<String> getTags() {
+        return captureRecord.getTags();
+    }
+
+    public Long getResponseTime() {
+        var responseTime = captureRecord.getResponseTime();
+        return responseTime != CaptureRecord.NO_RESPONSE_TIME ? responseTime : null;
+    }
+
+    public Message getMessage() {
+        if (message == null) {
+            var payload = captureRecord.getPayload();
+            try {
+                synchronized (MESSAGE_DECODER) {
+                    message = MESSAGE_DECODER.decode(payload);
+                }
+            } catch (IOException e) {
+                log.atError().log("Error decoding captured message: {}", e.getMessage());
+                message = Message.builder().payload(payload).data(List.of()).build();
+            }
+            if (!captureRecord.getTags().isEmpty()) {
+                message = message.toBuilder().tags(captureRecord.getTags()).build();
+            }
+        }
+        return message;
+    }
+}
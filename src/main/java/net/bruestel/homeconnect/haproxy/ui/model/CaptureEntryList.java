@@ -0,0 +1,97 @@
+package net.bruestel.homeconnect.haproxy.ui.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import net.bruestel.homeconnect.haproxy.service.capture.CaptureReader;
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only list of the records of a {@link CaptureReader}. Only the rows that are shown are read and decoded, the
+ * recently shown ones are kept. Records found by the background index are published on the FX thread.
+ */
+@Slf4j
+public final class CaptureEntryList extends ObservableListBase<CaptureEntry> {
+    // a few screens of rows, the table asks for the same row once per column
+    private static final int CACHE_SIZE = 512;
+
+    private final CaptureReader captureReader;
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private final long[] cachedIndexes = new long[CACHE_SIZE];
+    private final CaptureEntry[] cachedEntries = new CaptureEntry[CACHE_SIZE];
+    private final ReadOnlyBooleanWrapper indexComplete = new ReadOnlyBooleanWrapper();
+    // records published to the listeners so far
+    private int size;
+
+    public CaptureEntryList(CaptureReader captureReader) {
+        this.captureReader = captureReader;
+        captureReader.setIndexListener(this::scheduleUpdate);
+        size = (int) Math.min(captureReader.size(), Integer.MAX_VALUE);
+        indexComplete.set(captureReader.isIndexComplete());
+    }
+
+    /**
+     * @return {@code true} once the background index has found all records, changes on the FX thread
+     */
+    public ReadOnlyBooleanProperty indexCompleteProperty() {
+        return indexComplete.getReadOnlyProperty();
+    }
+
+    @Override
+    public CaptureEntry get(int index) {
+        Objects.checkIndex(index, size);
+        var slot = index % CACHE_SIZE;
+        if (cachedEntries[slot] != null && cachedIndexes[slot] == index) {
+            return cachedEntries[slot];
+        }
+
+        CaptureEntry entry;
+        try {
+            entry = new CaptureEntry(captureReader.read(index));
+        } catch (IOException e) {
+            log.atError().log("Error reading record {} of capture {}: {}", index, captureReader.getFile(),
+                    e.getMessage());
+            entry = new CaptureEntry(CaptureRecord.builder()
+                    .sessionId("")
+                    .tags(List.of("unreadable"))
+                    .payload(new byte[0])
+                    .build());
+        }
+        cachedIndexes[slot] = index;
+        cachedEntries[slot] = entry;
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::publish);
+        }
+    }
+
+    private void publish() {
+        updateScheduled.set(false);
+        var newSize = (int) Math.min(captureReader.size(), Integer.MAX_VALUE);
+        if (newSize > size) {
+            beginChange();
+            nextAdd(size, newSize);
+            size = newSize;
+            endChange();
+        }
+        // the last scan may end without new records
+        indexComplete.set(captureReader.isIndexComplete());
+    }
+}
@@ -1,13 +1,99 @@
 package net.bruestel.homeconnect.haproxy.ui.model;
 
-import lombok.Value;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import lombok.EqualsAndHashCode;
+
+import net.bruestel.homeconnect.haproxy.service.capture.model.CaptureRecord;
+import net.bruestel.homeconnect.haproxy.service.description.FeatureTable;
+import net.bruestel.homeconnect.haproxy.service.log.LogStore;
+import net.bruestel.homeconnect.haproxy.service.message.model.Message;
+
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.List;
 
-@Value
+/**
+ * Row of the {@link LogStore}. Holds the sequence number of the entry, the values are read on first access.
+ * A row of repeated messages stands for the entry and the repeats that follow it. The values of an evicted entry
+ * are {@code null}.
+ */
+@EqualsAndHashCode
 public class LogEntry {
-    ZonedDateTime timestamp;
-    String sessionId;
-    Sender sender;
-    Object message;
+    private final LogStore logStore;
+    private final long sequence;
+    private final int repeatCount;
+    // read at once on first access, an entry evicted in between is never read in parts
+    @EqualsAndHashCode.Exclude
+    private CaptureRecord captureRecord;
+    @EqualsAndHashCode.Exclude
+    private boolean read;
+
+    public LogEntry(LogStore logStore, long sequence) {
+        this(logStore, sequence, 1);
+    }
+
+    public LogEntry(LogStore logStore, long sequence, int repeatCount) {
+        this.logStore = logStore;
+        this.sequence = sequence;
+        this.repeatCount = repeatCount;
+    }
+
+    public ZonedDateTime getTimestamp() {
+        var record = record();
+        if (record == null) {
+            return null;
+        }
+        return Instant.ofEpochSecond(0, record.getTimestampNanos()).atZone(ZoneId.systemDefault());
+    }
+
+    public String getSessionId() {
+        var record = record();
+        return record != null ? record.getSessionId() : null;
+    }
+
+    public Sender getSender() {
+        var record = record();
+        return record != null ? record.getSender() : null;
+    }
+
+    public Message getMessage() {
+        var record = record();
+        return record != null ? logStore.getMessage(record) : null;
+    }
+
+    @JsonIgnore
+    public List<String> getTags() {
+        var record = record();
+        return record != null ? record.getTags() : List.of();
+    }
+
+    public Long getResponseTime() {
+        var record = record();
+        if (record == null || record.getResponseTime() == LogStore.NO_RESPONSE_TIME) {
+            return null;
+        }
+        return record.getResponseTime();
+    }
+
+    // number of identical messages the row stands for, 1 unless repeats are collapsed
+    @JsonIgnore
+    public int getRepeatCount() {
+        return repeatCount;
+    }
+
+    // names the uids of the message when it is shown, null if the device description is unknown
+    @JsonIgnore
+    public FeatureTable getFeatureTable() {
+        return logStore.getFeatureTable();
+    }
+
+    private CaptureRecord record() {
+        if (!read) {
+            captureRecord = logStore.getRecord(sequence);
+            read = true;
+        }
+        return captureRecord;
+    }
 }
@@ -0,0 +1,172 @@
+package net.bruestel.homeconnect.haproxy.ui.model;
+
+import net.bruestel.homeconnect.haproxy.service.log.LogStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only list of the entries of a {@link LogStore}. Rows are created on access only, appended and evicted entries
+ * are published in one change per pulse on the FX thread.
+ * <p>
+ * With repeats collapsed, consecutive messages of a session with the same body (only the sID and msgID differ) are
+ * shown as one row with a count.
+ */
+public class LogEntryList extends ObservableListBase<LogEntry> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final LogStore logStore;
+    private final boolean collapseRepeats;
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private final Runnable appendListener = this::scheduleUpdate;
+    // entries published to the listeners so far
+    private long first;
+    private long next;
+    // sequence numbers of the first entry of each row, only used with repeats collapsed
+    private long[] rowStarts = new long[INITIAL_CAPACITY];
+    private int rowHead;
+    private int rowCount;
+
+    public LogEntryList(LogStore logStore) {
+        this(logStore, false);
+    }
+
+    public LogEntryList(LogStore logStore, boolean collapseRepeats) {
+        this.logStore = logStore;
+        this.collapseRepeats = collapseRepeats;
+        logStore.addAppendListener(appendListener);
+        first = logStore.getFirstSequence();
+        next = first;
+        var storeNext = logStore.getNextSequence();
+        if (collapseRepeats) {
+            scan(storeNext);
+        }
+        next = storeNext;
+    }
+
+    /**
+     * Stops following the store.
+     */
+    public void dispose() {
+        logStore.removeAppendListener(appendListener);
+    }
+
+    @Override
+    public LogEntry get(int index) {
+        Objects.checkIndex(index, size());
+        if (!collapseRepeats) {
+            return new LogEntry(logStore, first + index);
+        }
+
+        var start = Math.max(rowStarts[rowHead + index], first);
+        return new LogEntry(logStore, start, (int) (rowEnd(index) - start));
+    }
+
+    @Override
+    public int size() {
+        return collapseRepeats ? rowCount : (int) (next - first);
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::publish);
+        }
+    }
+
+    private void publish() {
+        updateScheduled.set(false);
+        var storeFirst = logStore.getFirstSequence();
+        var storeNext = logStore.getNextSequence();
+        if (storeNext == next) {
+            return;
+        }
+
+        beginChange();
+        if (collapseRepeats) {
+            publishRows(storeFirst, storeNext);
+        } else {
+            var evicted = (int) Math.min(storeFirst - first, next - first);
+            if (evicted > 0) {
+                nextRemove(0, Collections.nCopies(evicted, new LogEntry(logStore, first)));
+            }
+            first = storeFirst;
+            var from = (int) (Math.max(next, storeFirst) - first);
+            next = storeNext;
+            nextAdd(from, size());
+        }
+        endChange();
+    }
+
+    private void publishRows(long storeFirst, long storeNext) {
+        // rows that end before the oldest kept entry are gone
+        var evicted = 0;
+        while (evicted < rowCount && rowEnd(evicted) <= storeFirst) {
+            evicted++;
+        }
+        if (evicted > 0) {
+            nextRemove(0, Collections.nCopies(evicted, new LogEntry(logStore, first)));
+            rowHead += evicted;
+            rowCount -= evicted;
+        }
+        first = storeFirst;
+
+        var rowsBefore = rowCount;
+        var lastRowGrown = scan(storeNext);
+        next = storeNext;
+        if (lastRowGrown) {
+            nextUpdate(rowsBefore - 1);
+        }
+        if (rowCount > rowsBefore) {
+            nextAdd(rowsBefore, rowCount);
+        }
+    }
+
+    /**
+     * Adds the entries up to the given sequence number to the rows.
+     *
+     * @return {@code true} if the last row got more repeats
+     */
+    private boolean scan(long storeNext) {
+        var rowsBefore = rowCount;
+        var lastRowGrown = false;
+        for (var sequence = Math.max(next, first); sequence < storeNext; sequence++) {
+            if (rowCount > 0 && isRepeat(sequence)) {
+                lastRowGrown |= rowCount == rowsBefore;
+                continue;
+            }
+            if (rowHead + rowCount == rowStarts.length) {
+                compactRows();
+            }
+            rowStarts[rowHead + rowCount++] = sequence;
+        }
+        return lastRowGrown;
+    }
+
+    private boolean isRepeat(long sequence) {
+        try {
+            return logStore.isRepeat(sequence);
+        } catch (IndexOutOfBoundsException e) {
+            // evicted while scanning, the row is dropped with the next update
+            return true;
+        }
+    }
+
+    private long rowEnd(int row) {
+        return row + 1 < rowCount ? rowStarts[rowHead + row + 1] : next;
+    }
+
+    private void compactRows() {
+        if (rowHead > rowStarts.length / 2) {
+            System.arraycopy(rowStarts, rowHead, rowStarts, 0, rowCount);
+        } else {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+            System.arraycopy(rowStarts, rowHead, rowStarts, 0, rowCount);
+        }
+        rowHead = 0;
+    }
+}